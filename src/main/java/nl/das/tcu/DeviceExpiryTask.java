@@ -0,0 +1,45 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import java.time.LocalDateTime;
+
+import nl.das.tcu.objects.DeviceDeadlines;
+import nl.das.tcu.objects.Terrarium;
+
+/**
+ * Switches the devices off at the end of their on-period. The thread sleeps until the earliest end time, so it
+ * does nothing while no device is switched on for a period.
+ */
+public class DeviceExpiryTask implements Runnable {
+
+	@Override
+	public void run () {
+		Terrarium terrarium = Terrarium.getInstance();
+		DeviceDeadlines deadlines = terrarium.getDeadlines();
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				deadlines.await();
+			} catch (InterruptedException e) {
+				break;
+			}
+			try {
+				// Commands of the Bluetooth clients are executed with the same lock
+				synchronized (terrarium) {
+					terrarium.setNow(LocalDateTime.now());
+					terrarium.checkDevices();
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+}
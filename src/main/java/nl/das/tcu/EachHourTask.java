@@ -10,28 +10,42 @@
 package nl.das.tcu;
 
 import java.time.LocalDateTime;
-import java.util.TimerTask;
 
 import nl.das.tcu.objects.Terrarium;
+import nl.das.tcu.trace.TraceWriter;
 
 /**
  *
  */
-public class EachHourTask extends TimerTask {
+public class EachHourTask implements Ticker.Tick {
 
 	@Override
-	public void run () {
+	public void run (LocalDateTime time) {
 		Util.println("EachHourTask: task executed!");
 		Terrarium terrarium = Terrarium.getInstance();
-		terrarium.setNow(LocalDateTime.now());
-		if (!terrarium.isTraceOn()) {
-			// Start trace on the whole hour
-			terrarium.setTrace(true);
+		// Commands of the Bluetooth clients are executed with the same lock
+		synchronized (terrarium) {
+			terrarium.setNow(time);
+			if (!terrarium.isTraceOn()) {
+				// Start trace on the whole hour
+				terrarium.setTrace(true);
+			}
+			// Each hour
+			// - decrement lifecycle value
+			terrarium.decreaseLifetime(1);
+			terrarium.saveLifecycleCounters();
+		}
+		// Report when trace lines could not be written in time
+		for (TraceWriter tw : new TraceWriter[] { TraceWriter.state(), TraceWriter.temperature() }) {
+			if ((tw.getDropped() > 0) || (tw.getBackpressure() > 0)) {
+				Util.println(tw.getStats());
+			}
+		}
+		// Report how late the ticks of the last hour were
+		for (Ticker t : Ticker.getStarted()) {
+			Util.println(t.getStats());
+			t.resetStats();
 		}
-		// Each hour
-		// - decrement lifecycle value
-		terrarium.decreaseLifetime(1);
-		terrarium.saveLifecycleCounters();
 	}
 
 }
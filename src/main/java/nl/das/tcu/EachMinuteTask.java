@@ -10,35 +10,42 @@
 package nl.das.tcu;
 
 import java.time.LocalDateTime;
-import java.util.TimerTask;
 
 import nl.das.tcu.hw.LCD;
 import nl.das.tcu.objects.Terrarium;
+import nl.das.tcu.trace.TemperatureRollup;
 
 /**
  *
  */
-public class EachMinuteTask extends TimerTask {
+public class EachMinuteTask implements Ticker.Tick {
 
 	@Override
-	public void run () {
+	public void run (LocalDateTime time) {
 //		Util.println("EachMinuteTask: task executed!");
 		Terrarium terrarium = Terrarium.getInstance();
-		terrarium.setNow(LocalDateTime.now());
-		// - display temperature on LCD line 1
-		terrarium.readSensorValues();
-		int tterr = terrarium.getTerrariumTemperature();
-		int troom = terrarium.getRoomTemperature();
+		int tterr;
+		int troom;
+		// Commands of the Bluetooth clients are executed with the same lock
+		synchronized (terrarium) {
+			terrarium.setNow(time);
+			terrarium.readSensorValues();
+			tterr = terrarium.getTerrariumTemperature();
+			troom = terrarium.getRoomTemperature();
+			Util.traceTemperature(Terrarium.traceFolder + "/" +  Terrarium.traceTempFilename, time, "r=%d t=%d", troom, tterr);
+			// - check timers
+			terrarium.checkTimers();
+			// - check sprayerrule
+			terrarium.checkSprayerRule();
+			// - check rulesets
+			terrarium.checkRules();
+			// Check if tracing should be switched off (max 1 day)
+			terrarium.checkTrace();
+		}
+		// - display temperature on LCD line 1 (outside the lock, the commands do not have to wait for the LCD)
 		LCD.getInstance().displayLine1(troom, tterr);
-		Util.traceTemperature(Terrarium.traceFolder + "/" +  Terrarium.traceTempFilename, LocalDateTime.now(), "r=%d t=%d", troom, tterr);
-		// - check timers
-		terrarium.checkTimers();
-		// - check sprayerrule
-		terrarium.checkSprayerRule();
-		// - check rulesets
-		terrarium.checkRules();
-		// Check if tracing should be switched off (max 1 day)
-		terrarium.checkTrace();
+		// - update the temperature history (outside the lock, the rollup files are written and compacted on disk)
+		TemperatureRollup.of(Terrarium.traceFolder).add(time, troom, tterr);
 	}
 
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import java.io.StringReader;
+
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.json.spi.JsonProvider;
+
+/**
+ * The JSON-P provider and JSON-B instance that are shared by everyone.
+ *
+ * Both are thread-safe and expensive to create: <code>Json.createXxx()</code> looks up the provider each time
+ * and <code>JsonbBuilder.create()</code> builds a new (empty) cache of class models.
+ * The output is compact.
+ */
+public class JsonCodec {
+
+	public static final JsonProvider PROVIDER = JsonProvider.provider();
+	public static final Jsonb JSONB = JsonbBuilder.create();
+
+	private JsonCodec() {
+	}
+
+	/**
+	 * @return the object (timer, ruleset, ...) as JSON value
+	 */
+	public static JsonValue toJsonValue(Object o) {
+		return PROVIDER.createReader(new StringReader(JSONB.toJson(o))).readValue();
+	}
+
+	public static JsonValue parseValue(String json) {
+		return PROVIDER.createReader(new StringReader(json)).readValue();
+	}
+
+	public static JsonObject parseObject(String json) {
+		return PROVIDER.createReader(new StringReader(json)).readObject();
+	}
+}
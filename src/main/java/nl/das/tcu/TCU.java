@@ -16,16 +16,21 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.Properties;
-import java.util.Timer;
 
 import javax.bluetooth.UUID;
 
 import com.pi4j.system.NetworkInfo;
 
+import nl.das.tcu.events.ChangeLog;
 import nl.das.tcu.hw.LCD;
+import nl.das.tcu.hw.SensorSampler;
 import nl.das.tcu.objects.Terrarium;
 import nl.das.tcu.rest.BTServer;
 import nl.das.tcu.rest.RestServer;
+import nl.das.tcu.store.StateJournal;
+import nl.das.tcu.trace.TraceCompactor;
+import nl.das.tcu.trace.TraceTransfer;
+import nl.das.tcu.trace.TraceWriter;
 
 /**
  *
@@ -44,6 +49,17 @@ public class TCU {
 		} catch (IOException e1) {
 			e1.printStackTrace();
 		}
+		TraceWriter.configure(props);
+		TraceCompactor.configure(props);
+		TraceTransfer.configure(props);
+		BTServer.configure(props);
+		SensorSampler.configure(props);
+		Terrarium.maxNrOfTraceDays = Integer.parseInt(props.getProperty("trace.maxDays", "" + Terrarium.maxNrOfTraceDays));
+		StateJournal.forceMillis = Long.parseLong(props.getProperty("state.forceMillis", "" + StateJournal.forceMillis));
+		// Number all changes from now on, so clients can ask for what they have missed
+		ChangeLog.getInstance();
+		// Write the queued trace lines before the JVM stops
+		Runtime.getRuntime().addShutdownHook(new Thread(TraceWriter::flushAll, "TraceFlush"));
 
 		// Start httpserver in his own, low prio thread
 		Util.println("Starting the REST service");
@@ -91,11 +107,14 @@ public class TCU {
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		// Apply the settings changes that have not been saved in settings.json yet
+		terrarium.openConfigStore(Paths.get("settings.json"), Paths.get("settings.journal"));
 		terrarium.setNow(LocalDateTime.now());
 		// Initialize the devices
 		terrarium.initDevices();
 		// Initialize device state
 		terrarium.initDeviceState();
+		terrarium.watchLifecycleCounters();
 		// Initialize the Temperature sensors
 		terrarium.initSensors();
 		int tterr = terrarium.getTerrariumTemperature();
@@ -112,19 +131,20 @@ public class TCU {
 			e.printStackTrace();
 		}
 		lcd.write(1, ip);
-		// Check timers if devices should be on
+		// Restore the device state of before the restart and then check what the timers say the devices should be now
+		terrarium.restoreDeviceState(Paths.get("state.journal"), Paths.get("state.snapshot"));
 		terrarium.initTimers(LocalDateTime.now());
 		terrarium.initRules();
+		// Compress the trace files of previous days that are still uncompressed
+		TraceCompactor.compactLater(Terrarium.traceFolder, "state_", null);
+		TraceCompactor.compactLater(Terrarium.traceFolder, "temp_", null);
 
-		// Start timer and schedule the seconds-task and the minute-task
-		EachSecondTask t1 = new EachSecondTask();
-		EachMinuteTask t2 = new EachMinuteTask();
-		EachHourTask t3 = new EachHourTask();
-		Timer t = new Timer("Timer");
-		t.schedule(t1, 0L, 1000L); //  executes every second
-		LocalDateTime now = LocalDateTime.now();
-		t.schedule(t2, (60L - now.getSecond()) * 1000L, 60000L); // executes every minute
-		t.schedule(t3, (3600L - ((now.getMinute() * 60L) + now.getSecond())) * 1000L, 3600000L); // executes every hour
+		// Switch devices off at the end of their period
+		new Thread(new DeviceExpiryTask(), "DeviceExpiry").start();
+		// Start the tickers of the minute-task and the hour-task, each in its own thread
+		int catchUp = Integer.parseInt(props.getProperty("clock.catchUp", "5"));
+		new Ticker("minute", 60000L, catchUp, new EachMinuteTask()).start();
+		new Ticker("hour", 3600000L, 1, new EachHourTask()).start();
 
 		Util.println("Main ended");
 	}
@@ -0,0 +1,201 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs a task on each whole second, minute or hour of the wall clock, in its own thread, so a slow task never
+ * delays the task of another ticker.
+ *
+ * The next tick is calculated from the system clock after each run instead of adding the period to the previous
+ * start, so the ticks do not drift. When the thread could not run in time (or the clock is set forward) the ticks
+ * that were missed are counted and at most <code>maxCatchUp</code> of them are run afterwards with the time they
+ * should have been run at. When the clock is set back the ticker is aligned to the clock again.
+ */
+public class Ticker {
+
+	/**
+	 * A task that is run on each tick.
+	 */
+	@FunctionalInterface
+	public interface Tick {
+		/**
+		 * @param time the wall clock time of the tick
+		 */
+		void run(LocalDateTime time);
+	}
+
+	private static final List<Ticker> started = new CopyOnWriteArrayList<>();
+
+	private final String name;
+	private final long periodMillis;
+	private final int maxCatchUp;
+	private final Tick task;
+	private final LongSupplier clock;
+	private final ZoneId zone = ZoneId.systemDefault();
+	private ScheduledExecutorService executor;
+	private long next;
+
+	// Statistics
+	private long ticks;
+	private long missed;
+	private long caughtUp;
+	private long totalLate;
+	private long maxLate;
+	private long maxRun;
+
+	public Ticker(String name, long periodMillis, int maxCatchUp, Tick task) {
+		this(name, periodMillis, maxCatchUp, task, System::currentTimeMillis);
+	}
+
+	Ticker(String name, long periodMillis, int maxCatchUp, Tick task, LongSupplier clock) {
+		this.name = name;
+		this.periodMillis = periodMillis;
+		this.maxCatchUp = maxCatchUp;
+		this.task = task;
+		this.clock = clock;
+		this.next = boundary(clock.getAsLong()) + periodMillis;
+	}
+
+	/**
+	 * @return the tickers that are running
+	 */
+	public static List<Ticker> getStarted() {
+		return started;
+	}
+
+	/**
+	 * Start ticking; the first tick is on the next whole period.
+	 */
+	public synchronized void start() {
+		if (this.executor != null) {
+			return;
+		}
+		this.executor = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Ticker-" + this.name));
+		this.next = boundary(this.clock.getAsLong()) + this.periodMillis;
+		started.add(this);
+		scheduleNext();
+	}
+
+	public synchronized void stop() {
+		if (this.executor != null) {
+			this.executor.shutdownNow();
+			this.executor = null;
+			started.remove(this);
+		}
+	}
+
+	private synchronized void scheduleNext() {
+		if (this.executor != null) {
+			long delay = Math.max(0L, this.next - this.clock.getAsLong());
+			this.executor.schedule(() -> {
+				tick();
+				scheduleNext();
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Run the task if the next tick is due, after the ticks that were missed since the previous one.
+	 */
+	void tick() {
+		long now = this.clock.getAsLong();
+		if (now < this.next) {
+			if ((this.next - now) > this.periodMillis) {
+				// The clock is set back
+				this.next = boundary(now) + this.periodMillis;
+			}
+			return;
+		}
+		long behind = (now - this.next) / this.periodMillis;
+		long due = this.next + (behind * this.periodMillis);
+		if (behind > 0) {
+			long n = Math.min(behind, this.maxCatchUp);
+			Util.println("Ticker " + this.name + ": " + behind + " tick(s) missed, " + n + " caught up");
+			for (long t = due - (n * this.periodMillis); t < due; t += this.periodMillis) {
+				run(t);
+			}
+			synchronized (this) {
+				this.missed += behind;
+				this.caughtUp += n;
+			}
+		}
+		long late = this.clock.getAsLong() - due;
+		long start = System.nanoTime();
+		run(due);
+		long duration = (System.nanoTime() - start) / 1000000L;
+		synchronized (this) {
+			this.ticks++;
+			this.totalLate += late;
+			this.maxLate = Math.max(this.maxLate, late);
+			this.maxRun = Math.max(this.maxRun, duration);
+		}
+		this.next = due + this.periodMillis;
+	}
+
+	private void run(long time) {
+		try {
+			this.task.run(LocalDateTime.ofInstant(Instant.ofEpochMilli(time), this.zone));
+		} catch (Exception e) {
+			// One failing run must not stop the ticks
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return the start of the period (in local time) the given time is in
+	 */
+	private long boundary(long time) {
+		long offset = this.zone.getRules().getOffset(Instant.ofEpochMilli(time)).getTotalSeconds() * 1000L;
+		return (Math.floorDiv(time + offset, this.periodMillis) * this.periodMillis) - offset;
+	}
+
+	public synchronized long getTicks() {
+		return this.ticks;
+	}
+
+	public synchronized long getMissed() {
+		return this.missed;
+	}
+
+	public synchronized long getCaughtUp() {
+		return this.caughtUp;
+	}
+
+	/**
+	 * @return the max number of milliseconds a tick started after its time
+	 */
+	public synchronized long getMaxLate() {
+		return this.maxLate;
+	}
+
+	public synchronized String getStats() {
+		return String.format("Ticker %s: %d ticks, late avg %d ms max %d ms, longest run %d ms, %d missed, %d caught up",
+				this.name, this.ticks, this.ticks == 0 ? 0 : this.totalLate / this.ticks, this.maxLate, this.maxRun, this.missed, this.caughtUp);
+	}
+
+	public synchronized void resetStats() {
+		this.ticks = 0;
+		this.missed = 0;
+		this.caughtUp = 0;
+		this.totalLate = 0;
+		this.maxLate = 0;
+		this.maxRun = 0;
+	}
+}
@@ -10,28 +10,22 @@
 package nl.das.tcu;
 
 import java.io.IOException;
-import java.nio.file.FileVisitResult;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.StandardOpenOption;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
 import javax.json.bind.Jsonb;
 import javax.json.bind.JsonbBuilder;
 import javax.json.bind.JsonbConfig;
 
 import nl.das.tcu.objects.Terrarium;
+import nl.das.tcu.trace.TraceCompactor;
+import nl.das.tcu.trace.TraceFiles;
+import nl.das.tcu.trace.TraceWriter;
 
 /**
  *
@@ -39,7 +33,6 @@ import nl.das.tcu.objects.Terrarium;
 public class Util {
 
 	static DateTimeFormatter dtfmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-	static DateTimeFormatter tffmt = DateTimeFormatter.ofPattern("yyyyMMdd");
 
 
 	public static String cvtPeriodToString(long l) {
@@ -73,89 +66,48 @@ public class Util {
 	}
 
 	public static List<String> listTraceFiles(String folder, String prefix) throws IOException {
-	    List<String> fileList = new ArrayList<>();
-	    Files.walkFileTree(Paths.get(folder), new SimpleFileVisitor<Path>() {
-	        @Override
-	        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-	            if (!Files.isDirectory(file) && file.getFileName().toString().startsWith(prefix)) {
-	                fileList.add(file.getFileName().toString());
-	            }
-	            return FileVisitResult.CONTINUE;
-	        }
-	    });
-	    Collections.sort(fileList);
-	    return fileList;
+		return TraceFiles.of(folder).list(prefix);
 	}
 
 	public static String createStateTraceFile(String dir, LocalDateTime now) {
-		// Count the number of tracefiles.
-		// If > Terrarium.maxNrOfTraceDays delete oldest first
-		// If file exists, delete it first
+		// If there are Terrarium.maxNrOfTraceDays tracefiles the oldest is deleted first
 		try {
-			List<String> files = listTraceFiles(dir, "state_");
-			if (files.size() == Terrarium.maxNrOfTraceDays) {
-				Files.deleteIfExists(Paths.get(dir + "/" + files.get(0)));
-			}
-			Path p = Paths.get(dir + "/state_" + now.format(tffmt));
-			Files.deleteIfExists(p);
-			Files.createFile(p);
-			TimeUnit.SECONDS.sleep(1);
-			return p.getFileName().toString();
-		} catch (IOException | InterruptedException e) {
+			String fname = TraceFiles.of(dir).rotate("state_", now, Terrarium.maxNrOfTraceDays);
+			TraceWriter.state().rotate();
+			TraceCompactor.compactLater(dir, "state_", TraceWriter.state());
+			return fname;
+		} catch (IOException e) {
 			e.printStackTrace();
 			return "";
 		}
 	}
 
 	public static String createTemperatureTraceFile(String dir, LocalDateTime now) {
-		// Count the number of tracefiles.
-		// If > Terrarium.maxNrOfTraceDays delete oldest first
-		// If file exists, delete it first
+		// If there are Terrarium.maxNrOfTraceDays tracefiles the oldest is deleted first
 		try {
-			List<String> files = listTraceFiles(dir, "temp_");
-			if (files.size() == Terrarium.maxNrOfTraceDays) {
-				Files.deleteIfExists(Paths.get(dir + "/" + files.get(0)));
-			}
-			Path p = Paths.get(dir + "/temp_" + now.format(tffmt));
-			Files.deleteIfExists(p);
-			Files.createFile(p);
-			TimeUnit.SECONDS.sleep(1);
-			return p.getFileName().toString();
-		} catch (IOException | InterruptedException e) {
+			String fname = TraceFiles.of(dir).rotate("temp_", now, Terrarium.maxNrOfTraceDays);
+			TraceWriter.temperature().rotate();
+			TraceCompactor.compactLater(dir, "temp_", TraceWriter.temperature());
+			return fname;
+		} catch (IOException e) {
 			e.printStackTrace();
 			return "";
 		}
 	}
 
 	public static void traceState(String tracefile, LocalDateTime now, String fmt, Object ...args) {
-		try {
-			if (Terrarium.getInstance().isTraceOn()) {
-				String nowstr = now.format(dtfmt);
-				String format = nowstr + " " + fmt;
-				Files.writeString(
-						Paths.get(tracefile),
-						String.format(format + "\n", args),
-						StandardOpenOption.APPEND
-				);
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
+		if (Terrarium.getInstance().isTraceOn()) {
+			String nowstr = now.format(dtfmt);
+			String format = nowstr + " " + fmt;
+			TraceWriter.state().append(Paths.get(tracefile), String.format(format + "\n", args));
 		}
 	}
 
 	public static void traceTemperature(String tracefile, LocalDateTime now, String fmt, Object ...args) {
-		try {
-			if (Terrarium.getInstance().isTraceOn()) {
-				String nowstr = now.format(dtfmt);
-				String format = nowstr + " " + fmt;
-				Files.writeString(
-						Paths.get(tracefile),
-						String.format(format + "\n", args),
-						StandardOpenOption.APPEND
-				);
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
+		if (Terrarium.getInstance().isTraceOn()) {
+			String nowstr = now.format(dtfmt);
+			String format = nowstr + " " + fmt;
+			TraceWriter.temperature().append(Paths.get(tracefile), String.format(format + "\n", args));
 		}
 	}
 
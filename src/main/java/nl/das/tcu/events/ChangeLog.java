@@ -0,0 +1,170 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.events;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+import nl.das.tcu.JsonCodec;
+import nl.das.tcu.objects.Ruleset;
+import nl.das.tcu.objects.Terrarium;
+
+/**
+ * The last changes of the device state and the settings, each with a sequence number, so a client that
+ * reconnects only needs to get what has changed since the last sequence number it has seen.
+ *
+ * The log holds at most <code>capacity</code> changes. A client that asks for the changes after a sequence number
+ * that is no longer in the log gets the complete state and settings instead. The sequence numbers start at the
+ * time of startup in milliseconds, so a number from before a restart is always older than the log.
+ * Each change holds the complete new value (not a difference), so only the last change of each device, timer or
+ * ruleset is returned and applying a change twice does no harm.
+ */
+public class ChangeLog implements EventBus.Listener {
+
+	public static int capacity = 500;
+
+	private static ChangeLog instance;
+
+	private final long[] seqs;
+	private final String[] types;
+	private final JsonObject[] data;
+	private long seq = System.currentTimeMillis();
+	private int size = 0;
+	private List<Runnable> waiters = new ArrayList<>();
+
+	public ChangeLog(int capacity) {
+		this.seqs = new long[capacity];
+		this.types = new String[capacity];
+		this.data = new JsonObject[capacity];
+	}
+
+	/**
+	 * @return the change log of the terrarium; it is created and starts listening on the first call
+	 */
+	public static synchronized ChangeLog getInstance() {
+		if (instance == null) {
+			instance = new ChangeLog(capacity);
+			EventBus.subscribe(instance);
+		}
+		return instance;
+	}
+
+	@Override
+	public void event(String type, JsonObject data) {
+		if (!type.equals(EventBus.SENSORS)) {
+			add(type, data);
+		}
+	}
+
+	public void add(String type, JsonObject data) {
+		List<Runnable> w;
+		synchronized (this) {
+			this.seq++;
+			int i = (int) (this.seq % this.seqs.length);
+			this.seqs[i] = this.seq;
+			this.types[i] = type;
+			this.data[i] = data;
+			if (this.size < this.seqs.length) {
+				this.size++;
+			}
+			if (this.waiters.isEmpty()) {
+				return;
+			}
+			w = this.waiters;
+			this.waiters = new ArrayList<>();
+		}
+		for (Runnable r : w) {
+			r.run();
+		}
+	}
+
+	public synchronized long getSeq() {
+		return this.seq;
+	}
+
+	/**
+	 * Run the given task (once) on the next change, unless there already are changes after the given sequence number.
+	 * The task is run by the thread that makes the change, so it must return immediately.
+	 *
+	 * @return false if there already are changes, so the task will not be run
+	 */
+	public synchronized boolean await(long since, Runnable task) {
+		if (this.seq != since) {
+			return false;
+		}
+		this.waiters.add(task);
+		return true;
+	}
+
+	public synchronized void cancel(Runnable task) {
+		this.waiters.remove(task);
+	}
+
+	/**
+	 * @return the changes after the given sequence number as {"seq":..,"full":false,"changes":[{"seq":..,"type":..,"data":{..}},..]}
+	 *         or the complete state and settings as {"seq":..,"full":true,"state":{..},"timers":[..],"rulesets":[..],..}
+	 */
+	public JsonObject since(long since) {
+		Map<String, Integer> last = new LinkedHashMap<>();
+		long now;
+		synchronized (this) {
+			now = this.seq;
+			long oldest = (now - this.size) + 1;
+			if ((since >= oldest - 1) && (since <= now)) {
+				for (long s = since + 1; s <= now; s++) {
+					int i = (int) (s % this.seqs.length);
+					String key = EventBus.key(this.types[i], this.data[i]);
+					// Keep the order of the last change of each key
+					last.remove(key);
+					last.put(key, i);
+				}
+				JsonArrayBuilder changes = Json.createArrayBuilder();
+				for (int i : last.values()) {
+					changes.add(Json.createObjectBuilder()
+							.add("seq", this.seqs[i])
+							.add("type", this.types[i])
+							.add("data", this.data[i]));
+				}
+				return Json.createObjectBuilder().add("seq", now).add("full", false).add("changes", changes).build();
+			}
+		}
+		// Changes made while the snapshot is built are in it and will be sent again after 'now'
+		return snapshot(now);
+	}
+
+	private static JsonObject snapshot(long seq) {
+		Terrarium t = Terrarium.getInstance();
+		JsonArrayBuilder rulesets = Json.createArrayBuilder();
+		for (Ruleset rs : Terrarium.cfg.getRulesets()) {
+			rulesets.add(JsonCodec.toJsonValue(rs));
+		}
+		JsonObjectBuilder active = Json.createObjectBuilder();
+		for (String d : Terrarium.cfg.getDeviceList()) {
+			active.add(d, t.getRuleActive(d));
+		}
+		return Json.createObjectBuilder()
+				.add("seq", seq)
+				.add("full", true)
+				.add("state", t.getStateSnapshot().getJson())
+				.add("timers", JsonCodec.toJsonValue(Terrarium.cfg.getTimers()))
+				.add("rulesets", rulesets)
+				.add("sprayerrule", JsonCodec.toJsonValue(t.getSprayerRule()))
+				.add("rule_active", active)
+				.add("sprayerrule_active", t.isSprayerRuleActive() ? "yes" : "no")
+				.build();
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.events;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.json.JsonObject;
+
+import nl.das.tcu.Util;
+
+/**
+ * Passes the changes in the terrarium (device switched on or off, new sensor values, trace started or stopped,
+ * rule activated or deactivated, settings changed) to whoever wants to know, e.g. the clients of the event stream.
+ *
+ * Events are published by the control loop, so a listener must return immediately: it may only hand the event
+ * over to another thread or queue.
+ */
+public class EventBus {
+
+	public static final String DEVICE = "device";
+	public static final String SENSORS = "sensors";
+	public static final String TRACE = "trace";
+	public static final String RULE = "rule";
+	public static final String SPRAYER_RULE = "sprayerrule";
+	public static final String TIMER = "timer";
+	public static final String RULESET = "ruleset";
+	public static final String SPRAYER_RULE_SETTINGS = "sprayerrule_settings";
+
+	@FunctionalInterface
+	public interface Listener {
+		void event(String type, JsonObject data);
+	}
+
+	private static final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+	private EventBus() {
+	}
+
+	public static void subscribe(Listener listener) {
+		listeners.add(listener);
+	}
+
+	public static void unsubscribe(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * @return true if there is a listener, so the event data is worth building
+	 */
+	public static boolean hasListeners() {
+		return !listeners.isEmpty();
+	}
+
+	/**
+	 * @return what the event is about (a device, timer, ruleset, ...): a later event with the same key replaces it
+	 */
+	public static String key(String type, JsonObject data) {
+		StringBuilder key = new StringBuilder(type);
+		if (data.containsKey("device")) {
+			key.append('/').append(data.getString("device"));
+		}
+		if (data.containsKey("index")) {
+			key.append('/').append(data.get("index"));
+		}
+		if (data.containsKey("nr")) {
+			key.append('/').append(data.get("nr"));
+		}
+		return key.toString();
+	}
+
+	public static void publish(String type, JsonObject data) {
+		for (Listener l : listeners) {
+			try {
+				l.event(type, data);
+			} catch (Exception e) {
+				// A failing listener must not stop the control loop
+				Util.println("Event '" + type + "' could not be handled: " + e.getMessage());
+			}
+		}
+	}
+}
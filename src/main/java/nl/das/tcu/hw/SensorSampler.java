@@ -0,0 +1,220 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.hw;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.pi4j.io.gpio.RaspiPin;
+import com.pi4j.io.w1.W1Master;
+
+import nl.das.tcu.Util;
+
+/**
+ * Reads the sensors in its own thread every <code>periodMillis</code> milliseconds; the DHT22 (room) and the
+ * DS18B20 (terrarium) are read at the same time.
+ *
+ * Each reading is published as an immutable {@link Sample}, so everyone who needs a sensor value gets the last
+ * sample immediately instead of waiting for a DHT22 read (up to 10 tries of 2.5 seconds), and the DHT22 is never
+ * read by two threads at once. When the last sample is older than <code>maxAgeMillis</code> a new one is read
+ * in the background.
+ */
+public class SensorSampler {
+
+	public static long periodMillis = 30000L;
+	public static long maxAgeMillis = 120000L;
+
+	/**
+	 * The values of all sensors at one moment.
+	 */
+	public static final class Sample {
+		private final long time;
+		private final int roomTemperature;
+		private final int roomHumidity;
+		private final int terrariumTemperature;
+
+		public Sample(long time, int roomTemperature, int roomHumidity, int terrariumTemperature) {
+			this.time = time;
+			this.roomTemperature = roomTemperature;
+			this.roomHumidity = roomHumidity;
+			this.terrariumTemperature = terrariumTemperature;
+		}
+
+		/**
+		 * @return the time of the reading in milliseconds (0 if the sensors have not been read yet)
+		 */
+		public long getTime() {
+			return this.time;
+		}
+
+		public int getRoomTemperature() {
+			return this.roomTemperature;
+		}
+
+		public int getRoomHumidity() {
+			return this.roomHumidity;
+		}
+
+		public int getTerrariumTemperature() {
+			return this.terrariumTemperature;
+		}
+	}
+
+	/**
+	 * @return {temperature, humidity}
+	 */
+	@FunctionalInterface
+	public interface RoomSensor {
+		double[] read() throws InterruptedException, IOException;
+	}
+
+	@FunctionalInterface
+	public interface TerrariumSensor {
+		double read();
+	}
+
+	private static SensorSampler instance;
+
+	private final RoomSensor room;
+	private final TerrariumSensor terrarium;
+	private final AtomicReference<Sample> latest = new AtomicReference<>(new Sample(0L, 0, 0, 0));
+	private final AtomicBoolean requested = new AtomicBoolean();
+	private volatile boolean roomConnected = true;
+	private volatile ScheduledExecutorService scheduler;
+	private ExecutorService roomReader;
+
+	public SensorSampler(RoomSensor room, TerrariumSensor terrarium) {
+		this.room = room;
+		this.terrarium = terrarium;
+	}
+
+	/**
+	 * @return the sampler of the DHT22 on GPIO 27 and the DS18B20 on the W1 bus (GPIO 7)
+	 */
+	public static synchronized SensorSampler getInstance() {
+		if (instance == null) {
+			DHT22 dht22 = new DHT22(RaspiPin.GPIO_27);
+			DS18B20 ds18b20 = new DS18B20(new W1Master());
+			instance = new SensorSampler(() -> {
+				dht22.doReadLoop();
+				return new double[] { dht22.getTemperature(), dht22.getHumidity() };
+			}, ds18b20::getTemperature);
+		}
+		return instance;
+	}
+
+	public static void configure(Properties props) {
+		periodMillis = Long.parseLong(props.getProperty("sensor.period", "" + (periodMillis / 1000))) * 1000;
+		maxAgeMillis = Long.parseLong(props.getProperty("sensor.maxAge", "" + (maxAgeMillis / 1000))) * 1000;
+	}
+
+	/**
+	 * Start reading the sensors every <code>periodMillis</code> milliseconds.
+	 */
+	public synchronized void start() {
+		if (this.scheduler != null) {
+			return;
+		}
+		this.roomReader = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "SensorSampler-room");
+			t.setDaemon(true);
+			return t;
+		});
+		ScheduledExecutorService s = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "SensorSampler");
+			t.setDaemon(true);
+			return t;
+		});
+		s.scheduleWithFixedDelay(this::sample, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+		this.scheduler = s;
+	}
+
+	public synchronized void stop() {
+		if (this.scheduler != null) {
+			this.scheduler.shutdownNow();
+			this.roomReader.shutdownNow();
+			this.roomReader = null;
+			this.scheduler = null;
+		}
+	}
+
+	/**
+	 * @return the last sample; if it is older than <code>maxAgeMillis</code> a new sample is read in the background
+	 */
+	public Sample get() {
+		Sample s = this.latest.get();
+		ScheduledExecutorService sch = this.scheduler;
+		if ((sch != null) && ((System.currentTimeMillis() - s.getTime()) > maxAgeMillis) && this.requested.compareAndSet(false, true)) {
+			try {
+				sch.execute(this::sample);
+			} catch (Exception e) {
+				this.requested.set(false);
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Read all sensors now and publish the sample.
+	 * A room sensor that fails is not read anymore and reads as 0; a failing read of the terrarium sensor keeps the
+	 * previous value.
+	 */
+	public Sample sample() {
+		this.requested.set(false);
+		Sample prev = this.latest.get();
+		Future<double[]> roomValues = null;
+		synchronized (this) {
+			if (this.roomConnected && (this.roomReader != null)) {
+				roomValues = this.roomReader.submit(this.room::read);
+			}
+		}
+		int tterr = prev.getTerrariumTemperature();
+		try {
+			tterr = (int) Math.round(this.terrarium.read());
+		} catch (Exception e) {
+			Util.println("Error read terrarium sensor values: " + e.getMessage());
+		}
+		int troom = 0;
+		int hroom = 0;
+		if (this.roomConnected) {
+			troom = prev.getRoomTemperature();
+			hroom = prev.getRoomHumidity();
+			try {
+				double[] v = roomValues != null ? roomValues.get() : this.room.read();
+				troom = (int) Math.round(v[0]);
+				hroom = (int) Math.round(v[1]);
+			} catch (InterruptedException e) {
+				Util.println("Error read room sensor values");
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException | IOException | RuntimeException e) {
+				Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+				if (cause instanceof InterruptedException) {
+					Util.println("Error read room sensor values");
+				} else {
+					Util.println("Error read room sensor values: " + cause.getClass().getName());
+					this.roomConnected = false;
+					troom = 0;
+					hroom = 0;
+				}
+			}
+		}
+		Sample s = new Sample(System.currentTimeMillis(), troom, hroom, tterr);
+		this.latest.set(s);
+		return s;
+	}
+}
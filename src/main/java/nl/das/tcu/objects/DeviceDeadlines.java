@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.objects;
+
+import java.util.PriorityQueue;
+
+/**
+ * The end times (in Epoch-seconds) of the devices that are switched on for a period, earliest first.
+ *
+ * An entry is not removed when its device is switched off or on again before the end time; the owner checks
+ * whether the device still has that end time when the entry expires.
+ */
+public class DeviceDeadlines {
+
+	private static final long MAX_WAIT_MILLIS = 60000L;
+
+	private final PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+
+	/**
+	 * @param device index of the device
+	 * @param endtime in Epoch-seconds
+	 */
+	public synchronized void add(int device, long endtime) {
+		this.queue.add(new long[] { endtime, device });
+		// The end time could be earlier than the one that is waited for
+		notifyAll();
+	}
+
+	/**
+	 * @return {endtime, device} of the earliest entry if its end time is at or before <code>now</code>, otherwise null
+	 */
+	public synchronized long[] pollExpired(long now) {
+		long[] e = this.queue.peek();
+		return ((e != null) && (e[0] <= now)) ? this.queue.poll() : null;
+	}
+
+	/**
+	 * @return the earliest end time in Epoch-seconds or Long.MAX_VALUE if there is none
+	 */
+	public synchronized long next() {
+		long[] e = this.queue.peek();
+		return e == null ? Long.MAX_VALUE : e[0];
+	}
+
+	public synchronized int size() {
+		return this.queue.size();
+	}
+
+	public synchronized void clear() {
+		this.queue.clear();
+	}
+
+	/**
+	 * Wait until the earliest end time has passed; without end times it waits until one is added.
+	 * It wakes up at least once a minute, so a clock that is set forward is noticed.
+	 */
+	public synchronized void await() throws InterruptedException {
+		while (true) {
+			long next = next();
+			if (next == Long.MAX_VALUE) {
+				wait();
+				continue;
+			}
+			long millis = (next * 1000L) - System.currentTimeMillis();
+			if (millis <= 0) {
+				return;
+			}
+			wait(Math.min(millis, MAX_WAIT_MILLIS));
+		}
+	}
+}
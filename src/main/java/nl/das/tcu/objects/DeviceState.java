@@ -11,6 +11,10 @@ package nl.das.tcu.objects;
 
 import java.time.LocalTime;
 
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
 import nl.das.tcu.Util;
 
 /**
@@ -71,23 +75,24 @@ public class DeviceState {
 	}
 
 	public String toJson() {
-		String end_time = null;
-		String state = "";
+		return toJsonObject().toString();
+	}
+
+	public JsonObject toJsonObject() {
+		JsonObjectBuilder ob = Json.createObjectBuilder().add("device", this.name);
 		if (this.onPeriod == 0) {
-			state = String.format("{\"device\":\"%s\",\"state\":\"off\",\"hours_on\":%d,\"manual\":\"%s\"}",
-					this.name, this.lifetime, this.manual ? "yes" : "no");
-		} else if(this.onPeriod == -1) {
-			state = String.format("{\"device\":\"%s\",\"state\":\"on\",\"end_time\":\"no endtime\",\"hours_on\":%d,\"manual\":\"%s\"}",
-					this.name, this.lifetime, this.manual ? "yes" : "no");
-		} else if(this.onPeriod == -2) {
-			state = String.format("{\"device\":\"%s\",\"state\":\"on\",\"end_time\":\"until ideal temperature is reached\",\"hours_on\":%d,\"manual\":\"%s\"}",
-					this.name, this.lifetime, this.manual ? "yes" : "no");
-		} else if (this.onPeriod > 0) {
-			LocalTime t = Util.ofEpochSecond(this.onPeriod).toLocalTime();
-			end_time = String.format("%02d:%02d:%02d", t.getHour(), t.getMinute(), t.getSecond());
-			state = String.format("{\"device\":\"%s\",\"state\":\"on\",\"end_time\":\"%s\",\"hours_on\":%d,\"manual\":\"%s\"}",
-					this.name, end_time, this.lifetime, this.manual ? "yes" : "no");
+			ob.add("state", "off");
+		} else {
+			ob.add("state", "on");
+			if (this.onPeriod == -1) {
+				ob.add("end_time", "no endtime");
+			} else if (this.onPeriod == -2) {
+				ob.add("end_time", "until ideal temperature is reached");
+			} else if (this.onPeriod > 0) {
+				LocalTime t = Util.ofEpochSecond(this.onPeriod).toLocalTime();
+				ob.add("end_time", String.format("%02d:%02d:%02d", t.getHour(), t.getMinute(), t.getSecond()));
+			}
 		}
-		return state;
+		return ob.add("hours_on", this.lifetime).add("manual", this.manual ? "yes" : "no").build();
 	}
 }
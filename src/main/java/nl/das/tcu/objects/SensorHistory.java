@@ -0,0 +1,114 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.objects;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+
+/**
+ * The sensor values of the last 48 hours, one sample per minute.
+ *
+ * The samples are kept in a ring buffer of primitive arrays, so adding a sample allocates nothing
+ * and reading them needs no file access. It is filled each time the sensors are read by the minute task,
+ * whether tracing is on or not.
+ */
+public class SensorHistory {
+
+	public static final int CAPACITY = 48 * 60;
+
+	private static SensorHistory instance = new SensorHistory(CAPACITY);
+
+	private final long[] time;
+	private final short[] troom;
+	private final short[] hroom;
+	private final short[] tterr;
+	private int next = 0;
+	private int size = 0;
+
+	public SensorHistory(int capacity) {
+		this.time = new long[capacity];
+		this.troom = new short[capacity];
+		this.hroom = new short[capacity];
+		this.tterr = new short[capacity];
+	}
+
+	public static SensorHistory getInstance() {
+		return instance;
+	}
+
+	public synchronized void add(LocalDateTime now, int troom, int hroom, int tterr) {
+		this.time[this.next] = now.atZone(ZoneId.systemDefault()).toEpochSecond();
+		this.troom[this.next] = (short) troom;
+		this.hroom[this.next] = (short) hroom;
+		this.tterr[this.next] = (short) tterr;
+		this.next = (this.next + 1) % this.time.length;
+		if (this.size < this.time.length) {
+			this.size++;
+		}
+	}
+
+	public synchronized int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the samples of the last <code>minutes</code> minutes before the newest sample, oldest first, as
+	 *         <code>{"time":[epoch seconds..],"troom":[..],"hroom":[..],"tterr":[..]}</code>
+	 */
+	public JsonObject getRecent(int minutes) {
+		long[] t;
+		short[] tr;
+		short[] hr;
+		short[] tt;
+		synchronized (this) {
+			int n = 0;
+			if (this.size > 0) {
+				long from = this.time[index(this.size - 1)] - (minutes * 60L);
+				// Samples are added in time order: count back from the newest
+				while ((n < this.size) && (this.time[index(this.size - 1 - n)] > from)) {
+					n++;
+				}
+			}
+			t = new long[n];
+			tr = new short[n];
+			hr = new short[n];
+			tt = new short[n];
+			for (int i = 0; i < n; i++) {
+				int ix = index((this.size - n) + i);
+				t[i] = this.time[ix];
+				tr[i] = this.troom[ix];
+				hr[i] = this.hroom[ix];
+				tt[i] = this.tterr[ix];
+			}
+		}
+		JsonArrayBuilder ta = Json.createArrayBuilder();
+		JsonArrayBuilder tra = Json.createArrayBuilder();
+		JsonArrayBuilder hra = Json.createArrayBuilder();
+		JsonArrayBuilder tta = Json.createArrayBuilder();
+		for (int i = 0; i < t.length; i++) {
+			ta.add(t[i]);
+			tra.add(tr[i]);
+			hra.add(hr[i]);
+			tta.add(tt[i]);
+		}
+		return Json.createObjectBuilder().add("time", ta).add("troom", tra).add("hroom", hra).add("tterr", tta).build();
+	}
+
+	/**
+	 * @return the array index of the i-th oldest sample
+	 */
+	private int index(int i) {
+		return ((this.next - this.size) + i + this.time.length) % this.time.length;
+	}
+}
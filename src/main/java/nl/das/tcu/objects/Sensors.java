@@ -9,33 +9,24 @@
 
 package nl.das.tcu.objects;
 
-import java.io.IOException;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
 import javax.json.bind.annotation.JsonbTransient;
 
-import com.pi4j.io.gpio.RaspiPin;
-import com.pi4j.io.w1.W1Master;
-
-import nl.das.tcu.Util;
-import nl.das.tcu.hw.DHT22;
-import nl.das.tcu.hw.DS18B20;
+import nl.das.tcu.hw.SensorSampler;
 
 /**
- *
+ * The sensor values as they are shown to the clients. The sensors themselves are read by the {@link SensorSampler}.
  */
 public class Sensors {
 
 	@SuppressWarnings("unused")
 	private String clock;
+	private String sampled;
 	private Sensor[] sensors = new Sensor[2];
-	// Initialize the W1 bus (connected on GPIO 7)
-	@JsonbTransient private W1Master w1Master = new W1Master();
-	// Initialize the Temperature sensor
-	@JsonbTransient private DS18B20 terrarium = new DS18B20(this.w1Master);
-	@JsonbTransient private DHT22 room = new DHT22(RaspiPin.GPIO_27);
-	@JsonbTransient private boolean roomConnected = true;
 
 	public Sensors() {
 		this.clock = LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd-MM-y HH:mm"));
@@ -43,24 +34,16 @@ public class Sensors {
 		this.sensors[1] = new Sensor("terrarium", 0, 0);
 	}
 
-	public void readSensorValues() {
-		if (this.roomConnected) {
-			try {
-				this.roomConnected = this.room.doReadLoop();
-				this.sensors[0].setTemperature((int) Math.round(this.room.getTemperature()));
-				this.sensors[0].setHumidity((int) Math.round(this.room.getHumidity()));
-			} catch (InterruptedException e) {
-				Util.println("Error read room sensor values");
-			} catch (IOException e) {
-				Util.println("Error read room sensor values: " + e.getClass().getName());
-				this.roomConnected = false;
-			}
-		} else {
-			this.sensors[0].setTemperature(0);
-			this.sensors[0].setHumidity(0);
+	public Sensors(SensorSampler.Sample sample) {
+		this();
+		if (sample.getTime() > 0) {
+			// The clock is the time of the request, this is when the values were read
+			this.sampled = LocalDateTime.ofInstant(Instant.ofEpochMilli(sample.getTime()), ZoneId.systemDefault())
+					.format(DateTimeFormatter.ofPattern("dd-MM-y HH:mm:ss"));
 		}
-		this.sensors[1].setTemperature((int) Math.round(this.terrarium.getTemperature()));
-		this.clock = LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd-MM-y HH:mm"));
+		this.sensors[0].setTemperature(sample.getRoomTemperature());
+		this.sensors[0].setHumidity(sample.getRoomHumidity());
+		this.sensors[1].setTemperature(sample.getTerrariumTemperature());
 	}
 
 	@JsonbTransient
@@ -81,6 +64,17 @@ public class Sensors {
 		this.clock = clock;
 	}
 
+	/**
+	 * @return the time the sensors were read, or null if they have not been read yet
+	 */
+	public String getSampled () {
+		return this.sampled;
+	}
+
+	public void setSampled (String sampled) {
+		this.sampled = sampled;
+	}
+
 	public Sensor[] getSensors () {
 		return this.sensors;
 	}
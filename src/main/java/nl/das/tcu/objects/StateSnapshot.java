@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.objects;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.json.JsonObject;
+
+/**
+ * The state of all devices and the trace as it was at a state version.
+ * It is built once per version and then served as it is.
+ */
+public class StateSnapshot {
+
+	// Versions start at 0 after a restart, so the ETag contains the start time as well
+	private static final String BOOT = Long.toHexString(System.currentTimeMillis());
+
+	private final long version;
+	private final JsonObject json;
+	private final String text;
+	private final byte[] bytes;
+
+	StateSnapshot(long version, JsonObject json) {
+		this.version = version;
+		this.json = json;
+		this.text = json.toString();
+		this.bytes = this.text.getBytes(StandardCharsets.UTF_8);
+	}
+
+	public long getVersion() {
+		return this.version;
+	}
+
+	public JsonObject getJson() {
+		return this.json;
+	}
+
+	public String getText() {
+		return this.text;
+	}
+
+	/**
+	 * @return the JSON text; must not be modified
+	 */
+	public byte[] getBytes() {
+		return this.bytes;
+	}
+
+	public String getETag() {
+		return BOOT + "-" + this.version;
+	}
+}
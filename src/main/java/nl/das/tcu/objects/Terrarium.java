@@ -12,17 +12,29 @@ package nl.das.tcu.objects;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
 
 import javax.json.bind.Jsonb;
 import javax.json.bind.JsonbBuilder;
-import javax.json.bind.JsonbConfig;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,7 +44,13 @@ import com.pi4j.io.gpio.PinState;
 import com.pi4j.io.gpio.RaspiPin;
 import com.pi4j.wiringpi.Gpio;
 
+import nl.das.tcu.JsonCodec;
 import nl.das.tcu.Util;
+import nl.das.tcu.events.EventBus;
+import nl.das.tcu.hw.SensorSampler;
+import nl.das.tcu.store.ConfigStore;
+import nl.das.tcu.store.StateJournal;
+import nl.das.tcu.store.StateJournal.State;
 
 /**
  * Pi 3B+ - pi4j pin (device)
@@ -78,13 +96,21 @@ public class Terrarium {
 	private long sprayerRuleDelayEndtime;
 	private static Device[] devices = new Device[NR_OF_DEVICES];
 	private static DeviceState[] devStates = new DeviceState[NR_OF_DEVICES];
+	private static final DeviceDeadlines deadlines = new DeviceDeadlines();
 	private boolean test = false;
-	private Sensors sensors = new Sensors();
+	private volatile Sensors sensors = new Sensors();
 	private LocalDateTime now;
 	private boolean traceOn = false;
 	private long traceStartTime;
+	private ConfigStore store;
+	private boolean lifecycleDirty = false;
+	private FileTime lifecycleSaved;
 	private static int[] ruleActiveForDevice;
 	private static Terrarium instance = null;
+	private static StateJournal journal;
+	private static final AtomicLong stateVersion = new AtomicLong();
+	private volatile StateSnapshot stateSnapshot;
+	private static final Map<Integer, JsonObject> lastDeviceEvent = new HashMap<>();
 
 	public static String traceFolder = "tracefiles";
 	public static String traceStateFilename;
@@ -152,15 +178,16 @@ public class Terrarium {
 		for (int i : Terrarium.cfg.getTimersPerDevice()) {
 			nrOfTimers += i;
 		}
-		Terrarium.cfg.setTimers(new Timer[nrOfTimers]);
+		Timer[] timers = new Timer[nrOfTimers];
 		// Initialize Timers
 		int timerIndex = 0;
 		for (int i = 0; i < NR_OF_DEVICES; i++) {
 			for (int dix = 0; dix < Terrarium.cfg.getTimersPerDevice()[i]; dix++) {
-				Terrarium.cfg.setTimer(timerIndex, new Timer(Terrarium.cfg.getDeviceList()[i], dix + 1, "00:00", "00:00", 0, 0));
+				timers[timerIndex] = new Timer(Terrarium.cfg.getDeviceList()[i], dix + 1, "00:00", "00:00", 0, 0);
 				timerIndex++;
 			}
 		}
+		Terrarium.cfg.setTimers(timers);
 		// Initialize rulesets
 		Terrarium.cfg.setRuleset(0, new Ruleset("no", "", "", 0,
 			new Rule[] {
@@ -229,39 +256,164 @@ public class Terrarium {
 	}
 
 	public void saveSettings(String settingsPath) {
-		Jsonb jsonb = JsonbBuilder.create(new JsonbConfig().withFormatting(true).withNullValues(true));
 		try {
-			Files.deleteIfExists(Paths.get(settingsPath));
-			Files.writeString(Paths.get(settingsPath), jsonb.toJson(Terrarium.cfg), StandardOpenOption.CREATE_NEW);
+			ConfigStore.write(Paths.get(settingsPath));
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
 	public void saveSettings() {
-		saveSettings("settings.json");
+		if (this.store != null) {
+			try {
+				this.store.snapshot();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		} else {
+			saveSettings("settings.json");
+		}
 	}
 
-	public void saveLifecycleCounters() {
+	/**
+	 * Apply the settings changes that were journaled but not yet saved in settings.json,
+	 * and journal all settings changes from now on.
+	 */
+	public void openConfigStore(Path settingsPath, Path journalPath) {
+		ConfigStore cs = new ConfigStore(settingsPath, journalPath);
+		try {
+			int n = cs.replay(this);
+			if (n > 0) {
+				Util.println(n + " settings changes restored");
+				cs.snapshot();
+			}
+		} catch (IOException e) {
+			Util.println("Settings changes could not be restored: " + e.getMessage());
+		}
+		this.store = cs;
+	}
+
+	/**
+	 * Save the settings changes that follow once, when {@link #endSettingsBatch()} is called, instead of one by one.
+	 */
+	public void beginSettingsBatch() {
+		if (this.store != null) {
+			this.store.beginBatch();
+		}
+	}
+
+	public void endSettingsBatch() {
+		if (this.store != null) {
+			this.store.endBatch();
+		}
+	}
+
+	/**
+	 * @return a copy of the timers, rulesets and sprayer rule (these objects are replaced, never changed)
+	 */
+	public TerrariumConfig copySettings() {
+		TerrariumConfig copy = new TerrariumConfig();
+		copy.setDeviceList(Terrarium.cfg.getDeviceList());
+		copy.setTimersPerDevice(Terrarium.cfg.getTimersPerDevice());
+		copy.setTimers(Terrarium.cfg.getTimers().clone());
+		copy.setRulesets(Terrarium.cfg.getRulesets().clone());
+		copy.setSprayerRule(Terrarium.cfg.getSprayerRule());
+		return copy;
+	}
+
+	/**
+	 * Put back the timers, rulesets and sprayer rule that have been replaced since the copy was made.
+	 */
+	public void restoreSettings(TerrariumConfig copy) {
+		List<Timer> timers = new ArrayList<>();
+		for (int i = 0; i < copy.getTimers().length; i++) {
+			if (Terrarium.cfg.getTimers()[i] != copy.getTimers()[i]) {
+				timers.add(copy.getTimers()[i]);
+			}
+		}
+		if (!timers.isEmpty()) {
+			replaceTimers(timers.toArray(new Timer[timers.size()]));
+		}
+		for (int i = 0; i < copy.getRulesets().length; i++) {
+			if (Terrarium.cfg.getRulesets()[i] != copy.getRulesets()[i]) {
+				replaceRuleset(i + 1, copy.getRulesets()[i]);
+			}
+		}
+		if (Terrarium.cfg.getSprayerRule() != copy.getSprayerRule()) {
+			setSprayerRule(copy.getSprayerRule());
+		}
+	}
+
+	/**
+	 * Write the lifecycle counters to disk if they have been changed since they were last written.
+	 */
+	public synchronized void saveLifecycleCounters() {
+		if (!this.lifecycleDirty) {
+			return;
+		}
 		try {
 			String json = "";
-			Files.deleteIfExists(Paths.get("lifecycle.txt"));
 			for (int i = 0; i < NR_OF_DEVICES; i++) {
 				if (Terrarium.devices[i].hasLifetime()) {
 					json += Terrarium.devices[i].getName() + "=" + Terrarium.devStates[i].getLifetime() + "\n";
 				}
 			}
-			Files.writeString(Paths.get("lifecycle.txt"), json, StandardOpenOption.CREATE_NEW);
+			Path tmp = Paths.get("lifecycle.txt.tmp");
+			Files.writeString(tmp, json);
+			Files.move(tmp, Paths.get("lifecycle.txt"), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			this.lifecycleSaved = Files.getLastModifiedTime(Paths.get("lifecycle.txt"));
+			this.lifecycleDirty = false;
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
-	public void setLifecycleCounter(String device, int value) {
+	public synchronized void setLifecycleCounter(String device, int value) {
 		Terrarium.devStates[getDeviceIndex(device)].setLifetime(value);
+		this.lifecycleDirty = true;
+		deviceChanged(getDeviceIndex(device));
 		saveLifecycleCounters();
 	}
 
+	/**
+	 * Reload the lifecycle counters when lifecycle.txt is changed by someone else.
+	 */
+	public void watchLifecycleCounters() {
+		Thread t = new Thread(() -> {
+			Path dir = Paths.get("lifecycle.txt").toAbsolutePath().getParent();
+			try (WatchService ws = dir.getFileSystem().newWatchService()) {
+				dir.register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+				while (true) {
+					WatchKey key = ws.take();
+					boolean changed = false;
+					for (WatchEvent<?> ev : key.pollEvents()) {
+						changed |= Paths.get("lifecycle.txt").equals(ev.context());
+					}
+					key.reset();
+					if (changed) {
+						synchronized (this) {
+							try {
+								FileTime modified = Files.getLastModifiedTime(Paths.get("lifecycle.txt"));
+								if (!modified.equals(this.lifecycleSaved)) {
+									Util.println("lifecycle.txt has been changed");
+									updateLifecycle();
+									this.lifecycleSaved = modified;
+								}
+							} catch (NoSuchFileException e) {
+							}
+						}
+					}
+				}
+			} catch (IOException e) {
+				Util.println("lifecycle.txt cannot be watched: " + e.getMessage());
+			} catch (InterruptedException e) {
+			}
+		});
+		t.setName("LifecycleWatcher");
+		t.setDaemon(true);
+		t.start();
+	}
+
 	public void setTrace(boolean on) {
 		if (on) {
 			this.traceOn = on;
@@ -278,6 +430,10 @@ public class Terrarium {
 			Util.traceTemperature(traceFolder + "/" + traceTempFilename, this.now, "stop");
 			this.traceOn = on;
 		}
+		stateChanged();
+		if (EventBus.hasListeners()) {
+			EventBus.publish(EventBus.TRACE, Json.createObjectBuilder().add("trace", this.traceOn ? "on" : "off").build());
+		}
 	}
 
 	public boolean isTraceOn() {
@@ -303,19 +459,38 @@ public class Terrarium {
 		this.test = test;
 		this.sensors = new Sensors();
 		if (!test) {
-			this.sensors.readSensorValues();
+			// The first values are needed before the control loop starts
+			SensorSampler sampler = SensorSampler.getInstance();
+			this.sensors = new Sensors(sampler.sample());
+			sampler.start();
 		}
 	}
 
+	/**
+	 * Take over the last sample of the sensor sampler (unless in test mode) and add it to the history.
+	 */
 	public void readSensorValues() {
 		if (!this.test) {
-			this.sensors.readSensorValues();
+			this.sensors = new Sensors(SensorSampler.getInstance().get());
+		}
+		LocalDateTime time = this.now == null ? LocalDateTime.now() : this.now;
+		SensorHistory.getInstance().add(time, getRoomTemperature(), this.sensors.getSensors()[0].getHumidity(), getTerrariumTemperature());
+		if (EventBus.hasListeners()) {
+			EventBus.publish(EventBus.SENSORS, Json.createObjectBuilder()
+					.add("time", Util.now(time))
+					.add("troom", getRoomTemperature())
+					.add("hroom", this.sensors.getSensors()[0].getHumidity())
+					.add("tterr", getTerrariumTemperature())
+					.build());
 		}
 	}
 
+	/**
+	 * @return the last sensor values; this never waits for the sensors to be read
+	 */
 	public Sensors getSensors() {
 		if (!this.test) {
-			this.sensors.readSensorValues();
+			return new Sensors(SensorSampler.getInstance().get());
 		}
 		return this.sensors;
 	}
@@ -359,25 +534,53 @@ public class Terrarium {
 	}
 
 	public void replaceTimers(Timer[] tmrs) {
+		// Replace the timers in a copy, so the timers and their index are replaced at once
+		Timer[] timers = Terrarium.cfg.getTimers().clone();
 		for (Timer tnew : tmrs) {
-			for (int i = 0; i < Terrarium.cfg.getTimers().length; i++) {
-				Timer told = Terrarium.cfg.getTimers()[i];
+			for (int i = 0; i < timers.length; i++) {
+				Timer told = timers[i];
 				if (told.getDevice().equalsIgnoreCase(tnew.getDevice()) && (told.getIndex() == tnew.getIndex())) {
-					Terrarium.cfg.setTimer(i, tnew);
+					timers[i] = tnew;
 				}
 			}
 		}
+		Terrarium.cfg.setTimers(timers);
+		if (EventBus.hasListeners()) {
+			for (Timer tnew : tmrs) {
+				EventBus.publish(EventBus.TIMER, JsonCodec.toJsonValue(tnew).asJsonObject());
+			}
+		}
+		if (this.store != null) {
+			this.store.timersReplaced(tmrs);
+		}
 	}
 
+	/**
+	 * Switch the devices on that the timers say should be on at this time. After a restart the device state of before
+	 * the restart has been restored first: a device that was switched on by a timer (indefinitely, not manual) and
+	 * whose timer switched it off during the downtime is switched off.
+	 */
 	public void initTimers(LocalDateTime now) {
+		int curMinutes = (now.getHour() * 60) + now.getMinute();
+		boolean[] timed = new boolean[NR_OF_DEVICES];
+		boolean[] on = new boolean[NR_OF_DEVICES];
 		for (Timer t : Terrarium.cfg.getTimers()) {
-			if (t.getRepeat() != 0) {
+			int ix = getDeviceIndex(t.getDevice());
+			if ((t.getRepeat() != 0) && (ix >= 0)) {
 				int timerMinutesOn = (t.getHour_on() * 60) + t.getMinute_on();
 				int timerMinutesOff = (t.getHour_off() * 60) + t.getMinute_off();
-				int curMinutes = (now.getHour() * 60) + now.getMinute();
 				if ((curMinutes >= timerMinutesOn) && (curMinutes <= timerMinutesOff)) {
-					setDeviceOn(t.getDevice(), -1L);
+					on[ix] = true;
 				}
+				timed[ix] = timed[ix] || (t.getPeriod() == 0);
+			}
+		}
+		for (int i = 0; i < NR_OF_DEVICES; i++) {
+			DeviceState d = Terrarium.devStates[i];
+			if (on[i] && (d.getOnPeriod() == ONPERIOD_OFF)) {
+				setDeviceOn(d.getName(), -1L);
+			} else if (timed[i] && !on[i] && !d.isManual() && (d.getOnPeriod() == ONPERIOD_ENDLESS)) {
+				setDeviceOff(d.getName());
 			}
 		}
 	}
@@ -393,60 +596,51 @@ public class Terrarium {
 	 */
 	public void checkTimers() {
 //		System.out.println(Util.getDateTimeString() + "Timers are checked."  );
-		for (Timer t : Terrarium.cfg.getTimers()) {
-			if (t.getRepeat() != 0) { // Timer is not active
-				if (t.getPeriod() == 0) { // Timer has an on and off
-					int timerMinutesOn = (t.getHour_on() * 60) + t.getMinute_on();
-					int timerMinutesOff = (t.getHour_off() * 60) + t.getMinute_off();
-					int curMinutes = (this.now.getHour() * 60) + this.now.getMinute();
-					if (curMinutes == timerMinutesOn) {
-						if (!isDeviceOn(t.getDevice())) {
-							setDeviceOn(t.getDevice(), -1L);
-							if (t.getDevice().equalsIgnoreCase("mist")) {
-								setDeviceOff("fan_in");
-								setDeviceOff("fan_out");
-								// and deactivate the rules for fan_in and fan_out and switch them off
-								setRuleActive("fan_in", 0);
-								setRuleActive("fan_out", 0);
-							} else if (t.getDevice().equalsIgnoreCase("fan_in")) {
-								setRuleActive("fan_in", 0);
-								setRuleActive("fan_out", 0);
-							} else if (t.getDevice().equalsIgnoreCase("fan_out")) {
-								setRuleActive("fan_in", 0);
-								setRuleActive("fan_out", 0);
-							}
-						}
-					} else if ((timerMinutesOff != 0) && (curMinutes == timerMinutesOff)) {
-						setDeviceOff(t.getDevice());
-						// Make the rules of all relevant devices active again
-						for (int i = 0; i < Terrarium.ruleActiveForDevice.length; i++) {
-							if (getRuleActive(Terrarium.devices[i].getName()) == 0) {
-								setRuleActive(Terrarium.devices[i].getName(), 1);
-							}
-						}
+		int curMinutes = (this.now.getHour() * 60) + this.now.getMinute();
+		for (TimerIndex.Event e : Terrarium.cfg.getTimerIndex().at(curMinutes)) {
+			Timer t = e.getTimer();
+			if (e.getType() == TimerIndex.ON) { // Timer has an on and off
+				if (!isDeviceOn(t.getDevice())) {
+					setDeviceOn(t.getDevice(), -1L);
+					if (t.getDevice().equalsIgnoreCase("mist")) {
+						setDeviceOff("fan_in");
+						setDeviceOff("fan_out");
+						// and deactivate the rules for fan_in and fan_out and switch them off
+						setRuleActive("fan_in", 0);
+						setRuleActive("fan_out", 0);
+					} else if (t.getDevice().equalsIgnoreCase("fan_in")) {
+						setRuleActive("fan_in", 0);
+						setRuleActive("fan_out", 0);
+					} else if (t.getDevice().equalsIgnoreCase("fan_out")) {
+						setRuleActive("fan_in", 0);
+						setRuleActive("fan_out", 0);
 					}
-				} else { // Timer has an on and period
-					int timerMinutesOn = (t.getHour_on() * 60) + t.getMinute_on();
-					int curMinutes = (this.now.getHour() * 60) + this.now.getMinute();
-					long endtime = Util.now(this.now) + t.getPeriod();
-					if (curMinutes == timerMinutesOn) {
-						if (!isDeviceOn(t.getDevice())) {
-							setDeviceOn(t.getDevice(), endtime);
-						}
-						if (t.getDevice().equalsIgnoreCase("sprayer")) {
-							// If device is "sprayer" then activate sprayer rule
-							this.sprayerRuleActive = true;
-							// Set sprayerRuleDelayEndtime = start time in minutes + delay in minutes
-							this.sprayerRuleDelayEndtime = (t.getHour_on() * 60) + t.getMinute_on();
-							this.sprayerRuleDelayEndtime += Terrarium.cfg.getSprayerRule().getDelay();
-							// and deactivate the rules for fan_in and fan_out and switch them off
-							setRuleActive("fan_in", 0);
-							setDeviceOff("fan_in");
-							setRuleActive("fan_out", 0);
-							setDeviceOff("fan_out");
-						}
+				}
+			} else if (e.getType() == TimerIndex.OFF) {
+				setDeviceOff(t.getDevice());
+				// Make the rules of all relevant devices active again
+				for (int i = 0; i < Terrarium.ruleActiveForDevice.length; i++) {
+					if (getRuleActive(Terrarium.devices[i].getName()) == 0) {
+						setRuleActive(Terrarium.devices[i].getName(), 1);
 					}
 				}
+			} else { // Timer has an on and period
+				if (!isDeviceOn(t.getDevice())) {
+					setDeviceOn(t.getDevice(), Util.now(this.now) + t.getPeriod());
+				}
+				if (t.getDevice().equalsIgnoreCase("sprayer")) {
+					// If device is "sprayer" then activate sprayer rule
+					this.sprayerRuleActive = true;
+					// Set sprayerRuleDelayEndtime = start time in minutes + delay in minutes
+					this.sprayerRuleDelayEndtime = (t.getHour_on() * 60) + t.getMinute_on();
+					this.sprayerRuleDelayEndtime += Terrarium.cfg.getSprayerRule().getDelay();
+					journalSprayerRule();
+					// and deactivate the rules for fan_in and fan_out and switch them off
+					setRuleActive("fan_in", 0);
+					setDeviceOff("fan_in");
+					setRuleActive("fan_out", 0);
+					setDeviceOff("fan_out");
+				}
 			}
 		}
 	}
@@ -459,6 +653,12 @@ public class Terrarium {
 
 	public void replaceRuleset(int nr, Ruleset ruleset) {
 		Terrarium.cfg.setRuleset(nr - 1, ruleset);
+		if (EventBus.hasListeners()) {
+			EventBus.publish(EventBus.RULESET, Json.createObjectBuilder().add("nr", nr).add("ruleset", JsonCodec.toJsonValue(ruleset)).build());
+		}
+		if (this.store != null) {
+			this.store.rulesetReplaced(nr, ruleset);
+		}
 	}
 
 	public int getRuleActive(String device) {
@@ -466,7 +666,12 @@ public class Terrarium {
 	}
 
 	public void setRuleActive(String device, int value) {
+		int old = Terrarium.ruleActiveForDevice[getDeviceIndex(device)];
 		Terrarium.ruleActiveForDevice[getDeviceIndex(device)] = value;
+		journal(StateJournal.RULE_ACTIVE, getDeviceIndex(device), value);
+		if ((old != value) && EventBus.hasListeners()) {
+			EventBus.publish(EventBus.RULE, Json.createObjectBuilder().add("device", device).add("active", value).build());
+		}
 	}
 
 	public void initRules() {
@@ -561,6 +766,12 @@ public class Terrarium {
 
 	public void setSprayerRule (SprayerRule sprayerRule) {
 		Terrarium.cfg.setSprayerRule(sprayerRule);
+		if (EventBus.hasListeners()) {
+			EventBus.publish(EventBus.SPRAYER_RULE_SETTINGS, JsonCodec.toJsonValue(sprayerRule).asJsonObject());
+		}
+		if (this.store != null) {
+			this.store.sprayerRuleReplaced(sprayerRule);
+		}
 	}
 
 	/**
@@ -578,6 +789,7 @@ public class Terrarium {
 					}
 				}
 				this.sprayerRuleActive = false;
+				journalSprayerRule();
 			}
 		}
 	}
@@ -593,10 +805,12 @@ public class Terrarium {
 		for (int i = 0; i< NR_OF_DEVICES; i++) {
 			Terrarium.devStates[i] = new DeviceState(Terrarium.cfg.getDeviceList()[i]);
 		}
+		Terrarium.deadlines.clear();
+		stateChanged();
 		updateLifecycle();
 	}
 
-	public void updateLifecycle() {
+	public synchronized void updateLifecycle() {
 		// Retrieve the lifecycle values from disk
 		try {
 			String json = new String(Files.readAllBytes(Paths.get("lifecycle.txt")));
@@ -621,9 +835,13 @@ public class Terrarium {
 	 * @param endtime in Epoch seconds or -1 or -2
 	 */
 	public void setDeviceOn(String device, long endtime) {
-		Terrarium.devices[getDeviceIndex(device)].switchOn();
-		Terrarium.devStates[getDeviceIndex(device)].setOnPeriod(endtime);
+		int ix = getDeviceIndex(device);
+		Terrarium.devices[ix].switchOn();
+		Terrarium.devStates[ix].setOnPeriod(endtime);
+		journal(StateJournal.ON_PERIOD, ix, endtime);
+		deviceChanged(ix);
 		if (endtime > 0L) {
+			Terrarium.deadlines.add(ix, endtime);
 			String dt = Util.ofEpochSecond(endtime).format(dtfmt);
 			Util.traceState(traceFolder + "/" + traceStateFilename, this.now, "%s 1 %s", device, dt);
 			if (device.equalsIgnoreCase("sprayer")) {
@@ -632,6 +850,7 @@ public class Terrarium {
 				// Set sprayerRuleDelayEndtime = start time in minutes + delay in minutes
 				this.sprayerRuleDelayEndtime = (Util.ofEpochSecond(endtime).getHour() * 60) + Util.ofEpochSecond(endtime).getMinute();
 				this.sprayerRuleDelayEndtime += Terrarium.cfg.getSprayerRule().getDelay();
+				journalSprayerRule();
 				// and deactivate the rules for fan_in and fan_out and switch them off
 				setRuleActive("fan_in", 0);
 				setDeviceOff("fan_in");
@@ -652,8 +871,11 @@ public class Terrarium {
 	}
 
 	public void setDeviceOff(String device) {
-		Terrarium.devices[getDeviceIndex(device)].switchOff();
-		Terrarium.devStates[getDeviceIndex(device)].setOnPeriod(ONPERIOD_OFF);
+		int ix = getDeviceIndex(device);
+		Terrarium.devices[ix].switchOff();
+		Terrarium.devStates[ix].setOnPeriod(ONPERIOD_OFF);
+		journal(StateJournal.ON_PERIOD, ix, ONPERIOD_OFF);
+		deviceChanged(ix);
 		Util.traceState(traceFolder + "/" + traceStateFilename, this.now, "%s 0", device);
 		if (device.equalsIgnoreCase("mist")) {
 			setRuleActive("fan_in", 1);
@@ -663,36 +885,139 @@ public class Terrarium {
 
 	public void setDeviceManualOn(String device) {
 		Terrarium.devStates[getDeviceIndex(device)].setManual(true);
+		journal(StateJournal.MANUAL, getDeviceIndex(device), 1);
+		deviceChanged(getDeviceIndex(device));
 	}
 
 	public void setDeviceManualOff(String device) {
 		Terrarium.devStates[getDeviceIndex(device)].setManual(false);
+		journal(StateJournal.MANUAL, getDeviceIndex(device), 0);
+		deviceChanged(getDeviceIndex(device));
 	}
 
 	public void setDeviceLifecycle(String device, int value) {
 		Terrarium.devStates[getDeviceIndex(device)].setLifetime(value);
+		deviceChanged(getDeviceIndex(device));
 	}
 
-	public void decreaseLifetime(int nrOfHours) {
+	public synchronized void decreaseLifetime(int nrOfHours) {
 		for (Device d : Terrarium.devices) {
 			if (d.hasLifetime()) {
 				Terrarium.devStates[getDeviceIndex(d.getName())].decreaseLifetime(nrOfHours);
-				saveLifecycleCounters();
+				this.lifecycleDirty = true;
+				deviceChanged(getDeviceIndex(d.getName()));
 			}
 		}
+		stateChanged();
+	}
+
+	/**
+	 * Restore the device state of before the restart from the state journal and
+	 * journal all state transitions from now on.
+	 *
+	 * @return false if there was no state to restore
+	 */
+	public boolean restoreDeviceState(Path journalPath, Path snapshotPath) {
+		boolean restored = false;
+		try {
+			State s = StateJournal.load(journalPath, snapshotPath, NR_OF_DEVICES);
+			if (s != null) {
+				for (int i = 0; i < NR_OF_DEVICES; i++) {
+					Terrarium.devStates[i].setOnPeriod(s.onPeriod[i]);
+					Terrarium.devStates[i].setManual(s.manual[i]);
+					Terrarium.ruleActiveForDevice[i] = s.ruleActive[i];
+					if (s.onPeriod[i] != ONPERIOD_OFF) {
+						Terrarium.devices[i].switchOn();
+					}
+					if (s.onPeriod[i] > 0L) {
+						Terrarium.deadlines.add(i, s.onPeriod[i]);
+					}
+				}
+				this.sprayerRuleActive = s.sprayerRuleActive;
+				this.sprayerRuleDelayEndtime = s.sprayerRuleDelayEndtime;
+				restored = true;
+				stateChanged();
+			}
+			// Start with the current state
+			s = new State(NR_OF_DEVICES);
+			for (int i = 0; i < NR_OF_DEVICES; i++) {
+				s.onPeriod[i] = Terrarium.devStates[i].getOnPeriod();
+				s.manual[i] = Terrarium.devStates[i].isManual();
+				s.ruleActive[i] = Terrarium.ruleActiveForDevice[i];
+			}
+			s.sprayerRuleActive = this.sprayerRuleActive;
+			s.sprayerRuleDelayEndtime = this.sprayerRuleDelayEndtime;
+			journal = new StateJournal(journalPath, snapshotPath, s);
+		} catch (IOException e) {
+			Util.println("Device state could not be restored: " + e.getMessage());
+		}
+		return restored;
+	}
+
+	private static void journal(byte type, int device, long value) {
+		if (journal != null) {
+			journal.record(type, device, value);
+		}
+	}
+
+	private void journalSprayerRule() {
+		journal(StateJournal.SPRAYER_RULE_ACTIVE, 0, this.sprayerRuleActive ? 1 : 0);
+		journal(StateJournal.SPRAYER_RULE_DELAY, 0, this.sprayerRuleDelayEndtime);
+		if (EventBus.hasListeners()) {
+			EventBus.publish(EventBus.SPRAYER_RULE, Json.createObjectBuilder()
+					.add("active", this.sprayerRuleActive ? "yes" : "no")
+					.add("delay_endtime", String.format("%02d:%02d", this.sprayerRuleDelayEndtime / 60, this.sprayerRuleDelayEndtime % 60))
+					.build());
+		}
 	}
 
 	public String getState() {
-		Terrarium.getInstance().updateLifecycle();
-		String json = "{\"trace\":\"" +  (this.traceOn ? "on" : "off") + "\",\"state\": [";
-		for (int i = 0; i < NR_OF_DEVICES; i++) {
-			json += Terrarium.devStates[i].toJson();
-			if (i != (NR_OF_DEVICES - 1)) {
-				json += ",";
+		return getStateSnapshot().getText();
+	}
+
+	/**
+	 * @return the state of the devices and the trace; only built again when the state has changed
+	 */
+	public StateSnapshot getStateSnapshot() {
+		long version = stateVersion.get();
+		StateSnapshot snapshot = this.stateSnapshot;
+		if ((snapshot == null) || (snapshot.getVersion() != version)) {
+			JsonArrayBuilder states = Json.createArrayBuilder();
+			for (int i = 0; i < NR_OF_DEVICES; i++) {
+				states.add(Terrarium.devStates[i].toJsonObject());
 			}
+			snapshot = new StateSnapshot(version, Json.createObjectBuilder()
+					.add("trace", this.traceOn ? "on" : "off")
+					.add("state", states)
+					.build());
+			this.stateSnapshot = snapshot;
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Must be called after each change of a device state or the trace.
+	 */
+	private static void stateChanged() {
+		stateVersion.incrementAndGet();
+	}
+
+	/**
+	 * Must be called after each change of the state of one device.
+	 * The device is only published when it is different from what has been published last.
+	 */
+	private static void deviceChanged(int device) {
+		stateChanged();
+		if (EventBus.hasListeners()) {
+			JsonObject data = Terrarium.devStates[device].toJsonObject();
+			synchronized (lastDeviceEvent) {
+				if (data.equals(lastDeviceEvent.get(device))) {
+					return;
+				}
+				lastDeviceEvent.put(device, data);
+			}
+			EventBus.publish(EventBus.DEVICE, data);
 		}
-		json += "]}";
-		return json;
 	}
 
 	public int getDeviceIndex(String device) {
@@ -707,21 +1032,22 @@ public class Terrarium {
 	}
 
 	/**
-	 * Check if a device needs to be switched off when it has a onPeriod > 0
-	 * This check needs to be done every second since the onPeriod is defined in Epoch-seconds.
+	 * Switch off the devices of which the onPeriod (end time in Epoch-seconds) has passed.
+	 * Only the expired end times are looked at, so without devices that are switched on for a period nothing is done.
 	 */
 	public void checkDevices() {
-		for (DeviceState d : Terrarium.devStates) {
-			if (d.getOnPeriod() > 0) {
-				// Device has an end time defined
-				if (Util.now(this.now) >= d.getOnPeriod()) {
-					setDeviceOff(d.getName());
-					if (!isSprayerRuleActive()) {
-						// Make the rules of all relevant devices active again
-						for (int i = 0; i < Terrarium.ruleActiveForDevice.length; i++) {
-							if (getRuleActive(Terrarium.devices[i].getName()) == 0) {
-								setRuleActive(Terrarium.devices[i].getName(), 1);
-							}
+		long now = Util.now(this.now);
+		long[] e;
+		while ((e = Terrarium.deadlines.pollExpired(now)) != null) {
+			DeviceState d = Terrarium.devStates[(int) e[1]];
+			// The device could be switched off, or on for another period, before this end time
+			if (d.getOnPeriod() == e[0]) {
+				setDeviceOff(d.getName());
+				if (!isSprayerRuleActive()) {
+					// Make the rules of all relevant devices active again
+					for (int i = 0; i < Terrarium.ruleActiveForDevice.length; i++) {
+						if (getRuleActive(Terrarium.devices[i].getName()) == 0) {
+							setRuleActive(Terrarium.devices[i].getName(), 1);
 						}
 					}
 				}
@@ -729,6 +1055,13 @@ public class Terrarium {
 		}
 	}
 
+	/**
+	 * @return the end times of the devices that are switched on for a period
+	 */
+	public DeviceDeadlines getDeadlines() {
+		return Terrarium.deadlines;
+	}
+
 	public Map<String, Pin> getDevicePin () {
 		return devicePin;
 	}
@@ -746,12 +1079,12 @@ public class Terrarium {
 	}
 
 	public DeviceState[] getDevStates () {
-		updateLifecycle();
 		return devStates;
 	}
 
 	public void setDevStates (DeviceState[] devStates) {
 		Terrarium.devStates = devStates;
+		stateChanged();
 	}
 
 
@@ -20,6 +20,7 @@ public class TerrariumConfig {
 	private Timer[] timers;
 	private Ruleset[] rulesets;
 	private SprayerRule sprayerRule;
+	private transient volatile TimerIndex timerIndex;
 
 	public String[] getDeviceList () {
 		return this.deviceList;
@@ -36,12 +37,29 @@ public class TerrariumConfig {
 	public Timer[] getTimers () {
 		return this.timers;
 	}
+	/**
+	 * Replace all timers and their index at once.
+	 */
 	public void setTimers (Timer[] timers) {
+		this.timerIndex = new TimerIndex(timers);
 		this.timers = timers;
 	}
 	@JsonbTransient
 	public void setTimer(int ix, Timer t) {
 		this.timers[ix] = t;
+		this.timerIndex = null;
+	}
+	/**
+	 * @return the index of the timers by minute of the day, built again after the timers have been replaced
+	 */
+	@JsonbTransient
+	public TimerIndex getTimerIndex () {
+		TimerIndex ix = this.timerIndex;
+		if ((ix == null) || (ix.getTimers() != this.timers)) {
+			ix = new TimerIndex(this.timers);
+			this.timerIndex = ix;
+		}
+		return ix;
 	}
 	public Ruleset[] getRulesets () {
 		return this.rulesets;
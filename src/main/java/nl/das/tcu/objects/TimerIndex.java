@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.objects;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The active timers compiled into what has to be done on each minute of the day, so checking the timers is one
+ * lookup of the current minute instead of going through all timers.
+ *
+ * An index is never changed; when the timers are replaced a new index is built.
+ */
+public final class TimerIndex {
+
+	public static final int MINUTES_PER_DAY = 1440;
+
+	public static final int ON = 1;
+	public static final int OFF = 2;
+	public static final int PERIOD = 3;
+
+	/**
+	 * Switch the device of a timer on or off, or on for the period of the timer.
+	 */
+	public static final class Event {
+		private final int type;
+		private final Timer timer;
+
+		Event(int type, Timer timer) {
+			this.type = type;
+			this.timer = timer;
+		}
+
+		public int getType() {
+			return this.type;
+		}
+
+		public Timer getTimer() {
+			return this.timer;
+		}
+	}
+
+	private static final Event[] NONE = new Event[0];
+
+	private final Timer[] timers;
+	private final Event[][] slots = new Event[MINUTES_PER_DAY][];
+	private final int size;
+
+	/**
+	 * @param timers the timers, the events of one minute are in the order of this array
+	 */
+	public TimerIndex(Timer[] timers) {
+		this.timers = timers;
+		List<List<Event>> events = new ArrayList<>(MINUTES_PER_DAY);
+		for (int m = 0; m < MINUTES_PER_DAY; m++) {
+			events.add(null);
+		}
+		int n = 0;
+		for (Timer t : timers == null ? new Timer[0] : timers) {
+			if ((t == null) || (t.getRepeat() == 0)) { // Timer is not active
+				continue;
+			}
+			int on = (t.getHour_on() * 60) + t.getMinute_on();
+			if (t.getPeriod() == 0) { // Timer has an on and off
+				n += add(events, on, new Event(ON, t));
+				int off = (t.getHour_off() * 60) + t.getMinute_off();
+				// The off-time is not used when it is 00:00 or the same as the on-time
+				if ((off != 0) && (off != on)) {
+					n += add(events, off, new Event(OFF, t));
+				}
+			} else { // Timer has an on and period
+				n += add(events, on, new Event(PERIOD, t));
+			}
+		}
+		for (int m = 0; m < MINUTES_PER_DAY; m++) {
+			List<Event> l = events.get(m);
+			this.slots[m] = l == null ? NONE : l.toArray(new Event[l.size()]);
+		}
+		this.size = n;
+	}
+
+	private static int add(List<List<Event>> events, int minute, Event e) {
+		if ((minute < 0) || (minute >= MINUTES_PER_DAY)) {
+			return 0;
+		}
+		if (events.get(minute) == null) {
+			events.set(minute, new ArrayList<>(2));
+		}
+		events.get(minute).add(e);
+		return 1;
+	}
+
+	/**
+	 * @param minute minute of the day (hour * 60 + minute)
+	 * @return the events of that minute, in the order of the timers
+	 */
+	public Event[] at(int minute) {
+		return this.slots[minute];
+	}
+
+	/**
+	 * @return the timers this index is built from
+	 */
+	public Timer[] getTimers() {
+		return this.timers;
+	}
+
+	/**
+	 * @return the total number of events
+	 */
+	public int size() {
+		return this.size;
+	}
+}
@@ -9,48 +9,71 @@
 
 package nl.das.tcu.rest;
 
-import java.io.DataInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.io.StringReader;
 import java.io.StringWriter;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.bluetooth.DiscoveryAgent;
 import javax.bluetooth.LocalDevice;
 import javax.bluetooth.RemoteDevice;
 import javax.bluetooth.UUID;
-import javax.json.Json;
-import javax.json.JsonArray;
+import javax.json.JsonException;
 import javax.json.JsonObject;
-import javax.json.JsonReader;
-import javax.json.bind.Jsonb;
-import javax.json.bind.JsonbBuilder;
-import javax.json.bind.JsonbConfig;
-import javax.json.bind.JsonbException;
+import javax.json.JsonValue;
+import javax.json.JsonValue.ValueType;
 import javax.microedition.io.Connector;
 import javax.microedition.io.StreamConnection;
 import javax.microedition.io.StreamConnectionNotifier;
 
+import nl.das.tcu.JsonCodec;
 import nl.das.tcu.Util;
-import nl.das.tcu.objects.Ruleset;
-import nl.das.tcu.objects.SprayerRule;
 import nl.das.tcu.objects.Terrarium;
-import nl.das.tcu.objects.Timer;
 
 /**
- *
+ * Bluetooth (RFCOMM) server. Each client connection is handled by its own thread, so several phones can be
+ * connected at the same time and a stalled client only blocks itself. After the <code>subscribe</code> command
+ * the changes in the terrarium are pushed over the connection as well (see {@link Subscription}).
+ * A client that has sent nothing for <code>idleTimeoutMillis</code> is disconnected (unless it is subscribed), and a new client is refused
+ * when <code>maxClients</code> clients are connected.
  */
 public class BTServer {
 
+	public static int maxClients = 4;
+	public static long idleTimeoutMillis = 300000L;
+	public static int maxFrameSize = 65536;
+	public static int responseCacheSize = 256;
+
+	private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "BTWatchdog");
+		t.setDaemon(true);
+		return t;
+	});
+
+	static ResponseCache responses = new ResponseCache(responseCacheSize);
+
 	private StreamConnectionNotifier scn;
-	private StreamConnection sc;
+	private boolean discoverable;
+	private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger clientNr = new AtomicInteger();
+	private ExecutorService executor;
+	private ScheduledFuture<?> idleCheck;
 
 	public BTServer(String name, UUID uuid) throws IOException {
 		LocalDevice.getLocalDevice().setDiscoverable(DiscoveryAgent.GIAC);
@@ -58,323 +81,315 @@ public class BTServer {
 		Util.println("Connecting to '" + url + "'....");
 		// Create a server connection (a notifier)
 		this.scn = (StreamConnectionNotifier) Connector.open(url);
+		this.discoverable = true;
 	}
 
-	public void start() throws IOException {
-		Util.println("BTServer started");
-		while(true) {
-			LocalDevice.getLocalDevice().setDiscoverable(DiscoveryAgent.GIAC);
-			// Accept a new client connection
-			this.sc = this.scn.acceptAndOpen();
-			// New client connection accepted; get a handle on it
-			RemoteDevice rd = RemoteDevice.getRemoteDevice(this.sc);
-			Util.println("New Bluetooth client connection... " + rd.getFriendlyName(false));
-			// Read input message, in this example a String
-			DataInputStream dataIn = this.sc.openDataInputStream();
-			DataOutputStream dataOut = this.sc.openDataOutputStream();
-			int chr;
-			StringBuffer sb = new StringBuffer();
-			while ((chr = dataIn.read()) != -1) {
-				if (chr == 0x03) {
-					handleCommand(sb.toString(), dataOut);
-					sb = new StringBuffer();
-				} else {
-					sb.append((char)chr);
-				}
-			}
-			Util.println("Bluetooth connection closed");
-		}
+	/**
+	 * Server on an already opened notifier (used in tests).
+	 */
+	public BTServer(StreamConnectionNotifier scn) {
+		this.scn = scn;
+		this.discoverable = false;
+	}
+
+	public static void configure(Properties props) {
+		maxClients = Integer.parseInt(props.getProperty("bt.maxClients", "" + maxClients));
+		idleTimeoutMillis = Long.parseLong(props.getProperty("bt.idleTimeout", "" + (idleTimeoutMillis / 1000))) * 1000;
+		maxFrameSize = Integer.parseInt(props.getProperty("bt.maxFrameSize", "" + maxFrameSize));
+		responseCacheSize = Integer.parseInt(props.getProperty("bt.responseCacheSize", "" + responseCacheSize));
+		responses = new ResponseCache(responseCacheSize);
 	}
 
 	/**
-	 * @param string
-	 * @throws IOException
+	 * Accept client connections until the server is stopped.
 	 */
-	public static void handleCommand (String command, OutputStream out) throws IOException {
-		Jsonb jsonb = JsonbBuilder.create(new JsonbConfig().withFormatting(true));
-		// Analyze command
-		Command cmd = jsonb.fromJson(command, Command.class);
-		Response res = new Response(cmd.getMsgId(), cmd.getCmd());
+	public void start() throws IOException {
+		Util.println("BTServer started");
+		this.executor = new ThreadPoolExecutor(0, maxClients, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+			Thread t = new Thread(r, "BTClient-" + this.clientNr.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		long period = Math.max(idleTimeoutMillis / 4, 1L);
+		this.idleCheck = watchdog.scheduleAtFixedRate(this::closeIdleClients, period, period, TimeUnit.MILLISECONDS);
 		try {
-			switch(cmd.getCmd()) {
-			case "getSensors": {
-				JsonReader jsonReader = Json.createReader(new StringReader(jsonb.toJson(Terrarium.getInstance().getSensors())));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
-				break;
-			}
-			case "setSensors": {
-				if (cmd.getData() == null) {
-					throw new CommandException("No data received.");
+			while(true) {
+				if (this.discoverable) {
+					LocalDevice.getLocalDevice().setDiscoverable(DiscoveryAgent.GIAC);
 				}
-				int rt = cmd.getData().getInt("roomtemp", 0);
-				if( rt == 0) {
-					throw new CommandException("Integer parameter 'roomtemp' not found.");
-				}
-				int tt = cmd.getData().getInt("terrtemp", 0);
-				if (tt == 0) {
-					throw new CommandException("Integer parameter 'terrtemp' not found.");
-				}
-				Terrarium.getInstance().setSensors(rt, tt);
-				res.setResponse(JsonObject.EMPTY_JSON_OBJECT);
-				break;
-			}
-			case "setTestOff": {
-				Terrarium.getInstance().setTestOff();
-				res.setResponse(JsonObject.EMPTY_JSON_OBJECT);
-				break;
-			}
-			case "getState": {
-				JsonReader jsonReader = Json.createReader(new StringReader(Terrarium.getInstance().getState()));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
-				break;
-			}
-			case "setDeviceOn": {
-				if (cmd.getData() == null) {
-					throw new CommandException("No data found.");
-				}
-				String prm = cmd.getData().getString("device", "");
-				if( prm.length() == 0) {
-					throw new CommandException("String parameter 'device' not found.");
-				}
-				Terrarium.getInstance().setDeviceOn(prm, -1);
-				res.setResponse(JsonObject.EMPTY_JSON_OBJECT);
-				break;
-			}
-			case "setDeviceOff": {
-				if (cmd.getData() == null) {
-					throw new CommandException("No data found.");
-				}
-				String prm = cmd.getData().getString("device", "");
-				if( prm.length() == 0) {
-					throw new CommandException("String parameter 'device' not found.");
-				}
-				Terrarium.getInstance().setDeviceOff(prm);
-				res.setResponse(JsonObject.EMPTY_JSON_OBJECT);
-				break;
-			}
-			case "setDeviceOnFor": {
-				if (cmd.getData() == null) {
-					throw new CommandException("No data found.");
-				}
-				String prm = cmd.getData().getString("device", "");
-				if( prm.length() == 0) {
-					throw new CommandException("String parameter 'device' not found.");
-				}
-				int per = cmd.getData().getInt("period", -1);
-				if (per == -1) {
-					throw new CommandException("Integer parameter 'period' not found.");
-				}
-				if ((per <= 0) || (per > 3600)) {
-					throw new CommandException("Integer parameter 'period' must be > 0 and < 3600 seconds.");
-				}
-				Terrarium.getInstance().setDeviceOn(prm, Util.now(LocalDateTime.now()) + per);
-				res.setResponse(JsonObject.EMPTY_JSON_OBJECT);
-				break;
-			}
-			case "setDeviceManualOn": {
-				if (cmd.getData() == null) {
-					throw new CommandException("No data found.");
-				}
-				String prm = cmd.getData().getString("device", "");
-				if( prm.length() == 0) {
-					throw new CommandException("String parameter 'device' not found.");
-				}
-				Terrarium.getInstance().setDeviceManualOn(prm);
-				res.setResponse(JsonObject.EMPTY_JSON_OBJECT);
-				break;
-			}
-			case "setDeviceManualOff": {
-				if (cmd.getData() == null) {
-					throw new CommandException("No data found.");
-				}
-				String prm = cmd.getData().getString("device", "");
-				if( prm.length() == 0) {
-					throw new CommandException("String parameter 'device' not found.");
-				}
-				Terrarium.getInstance().setDeviceManualOff(prm);
-				res.setResponse(JsonObject.EMPTY_JSON_OBJECT);
-				break;
-			}
-			case "setLifecycleCounter": {
-				if (cmd.getData() == null) {
-					throw new CommandException("No data found.");
-				}
-				String prm = cmd.getData().getString("device", "");
-				if( prm.length() == 0) {
-					throw new CommandException("String parameter 'device' not found.");
-				}
-				int hrs = cmd.getData().getInt("hoursOn", -1);
-				if (hrs == -1) {
-					throw new CommandException("Integer parameter 'hoursOn' not found.");
-				}
-				if (hrs <= 0 ) {
-					throw new CommandException("Integer parameter 'hoursOn' must be > 0 hours.");
-				}
-				Terrarium.getInstance().setLifecycleCounter(prm, hrs);
-				res.setResponse(JsonObject.EMPTY_JSON_OBJECT);
-				break;
-			}
-			case "getProperties": {
-				JsonReader jsonReader = Json.createReader(new StringReader(Terrarium.getInstance().getProperties()));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
-				break;
-			}
-			case "setTraceOn": {
-				Terrarium.getInstance().setNow(LocalDateTime.now());
-				Terrarium.getInstance().setTrace(true);
-				res.setResponse(JsonObject.EMPTY_JSON_OBJECT);
-				break;
-			}
-			case "setTraceOff": {
-				Terrarium.getInstance().setTrace(false);
-				res.setResponse(JsonObject.EMPTY_JSON_OBJECT);
-				break;
-			}
-			case "getTimersForDevice": {
-				if (cmd.getData() == null) {
-					throw new CommandException("No data found.");
-				}
-				String prm = cmd.getData().getString("device", "");
-				if( prm.length() == 0) {
-					throw new CommandException("String parameter 'device' not found.");
-				}
-				JsonReader jsonReader = Json.createReader(new StringReader("{\"timers\":" + jsonb.toJson(Terrarium.getInstance().getTimersForDevice(prm)) + "}"));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
-				break;
-			}
-			case "replaceTimers": {
-				if (cmd.getData() == null) {
-					throw new CommandException("No data found.");
-				}
-				JsonArray ja = Json.createReader(new StringReader(cmd.getData().get("timers").toString())).readArray();
-				if (ja == null) {
-					throw new CommandException("JsonArray parameter 'timers' does not contain an array of Timer objects.");
-				}
-				try {
-					Timer[] timers = jsonb.fromJson(ja.toString(), Timer[].class);
-					Terrarium.getInstance().replaceTimers(timers);
-					Terrarium.getInstance().saveSettings();
-					res.setResponse(JsonObject.EMPTY_JSON_OBJECT);
-				} catch (JsonbException e) {
-					throw new CommandException("JsonArray parameter 'timers' does not contain an array of Timer json objects.");
-				}
-				break;
-			}
-			case "getRuleset": {
-				int prm = cmd.getData().getInt("rulesetnr", 0);
-				if( prm == 0) {
-					throw new CommandException("Integer parameter 'rulesetnr' not found.");
-				}
-				JsonReader jsonReader = Json.createReader(new StringReader(jsonb.toJson(Terrarium.getInstance().getRuleset(prm))));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
-				break;
-			}
-			case "saveRuleset": {
-				JsonObject obj = cmd.getData().get("ruleset").asJsonObject();
-				if (obj == null) {
-					throw new CommandException("JsonObject parameter 'ruleset' not found.");
-				}
-				int prm = cmd.getData().getInt("rulesetnr", 0);
-				if( prm == 0) {
-					throw new CommandException("Integer parameter 'rulesetnr' not found.");
-				}
-				Ruleset ruleset;
+				// Accept a new client connection
+				StreamConnection sc;
 				try {
-					ruleset = jsonb.fromJson(obj.toString(), Ruleset.class);
-					Terrarium.getInstance().replaceRuleset(prm, ruleset);
-					Terrarium.getInstance().saveSettings();
-					res.setResponse(JsonObject.EMPTY_JSON_OBJECT);
-				} catch (JsonbException e) {
-					throw new CommandException("JsonObject parameter 'ruleset' does not contain a Ruleset json object.");
-				}
-				break;
-			}
-			case "getSprayerRule": {
-				JsonReader jsonReader = Json.createReader(new StringReader(jsonb.toJson(Terrarium.getInstance().getSprayerRule())));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
-				break;
-			}
-			case "setSprayerRule": {
+					sc = this.scn.acceptAndOpen();
+				} catch (IOException e) {
+					if (this.executor.isShutdown()) {
+						break;
+					}
+					throw e;
+				}
+				Client c = new Client(sc);
+				if (this.clients.size() >= maxClients) {
+					Util.println("Bluetooth client " + c.name + " refused: already " + this.clients.size() + " clients connected");
+					c.close();
+					continue;
+				}
+				this.clients.add(c);
 				try {
-					SprayerRule sprayerRule = jsonb.fromJson(cmd.getData().toString(), SprayerRule.class);
-					Terrarium.getInstance().setSprayerRule(sprayerRule);;
-					Terrarium.getInstance().saveSettings();
-					res.setResponse(JsonObject.EMPTY_JSON_OBJECT);
-				} catch (JsonbException e) {
-					throw new CommandException("Data does not contain a SprayerRule json object.");
+					this.executor.execute(c);
+				} catch (RejectedExecutionException e) {
+					Util.println("Bluetooth client " + c.name + " refused: no thread available");
+					c.close();
 				}
-				break;
 			}
-			case "getTempTracefiles": {
-				List<String> files = new ArrayList<>();
-				files = Util.listTraceFiles(Terrarium.traceFolder, "temp_");
-				JsonReader jsonReader = Json.createReader(new StringReader("{\"files\":" + jsonb.toJson(files) + "}"));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
-				break;
+		} finally {
+			stop();
+		}
+	}
+
+	/**
+	 * Stop accepting clients and disconnect all clients.
+	 */
+	public void stop() {
+		if ((this.executor == null) || this.executor.isShutdown()) {
+			return;
+		}
+		this.executor.shutdown();
+		this.idleCheck.cancel(false);
+		try {
+			this.scn.close();
+		} catch (IOException e) {
+		}
+		for (Client c : this.clients) {
+			c.close();
+		}
+	}
+
+	public int getNrOfClients() {
+		return this.clients.size();
+	}
+
+	private void closeIdleClients() {
+		long now = System.currentTimeMillis();
+		for (Client c : this.clients) {
+			// A subscribed client may be silent for a long time, it only listens to the events
+			if (((now - c.lastActivity) > idleTimeoutMillis) && !c.isSubscribed()) {
+				Util.println("Bluetooth client " + c.name + " has been idle too long and is disconnected");
+				c.close();
 			}
-			case "getStateTracefiles": {
-				List<String> files = new ArrayList<>();
-				files = Util.listTraceFiles(Terrarium.traceFolder, "state_");
-				JsonReader jsonReader = Json.createReader(new StringReader("{\"files\":" + jsonb.toJson(files) + "}"));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
-				break;
+		}
+	}
+
+	/**
+	 * One client connection. Commands that use the terrarium are executed while holding the Terrarium lock
+	 * (see {@link Commands}), so they never run in the middle of a control loop task; their response is written
+	 * to the client after the lock has been released.
+	 */
+	private class Client implements Runnable, Session {
+		private final StreamConnection sc;
+		private final String name;
+		private volatile long lastActivity = System.currentTimeMillis();
+		private OutputStream out;
+		private Subscription subscription;
+
+		Client(StreamConnection sc) {
+			this.sc = sc;
+			this.name = friendlyName(sc);
+		}
+
+		@Override
+		public void run() {
+			Util.println("New Bluetooth client connection... " + this.name);
+			try (InputStream dataIn = this.sc.openInputStream(); DataOutputStream dataOut = this.sc.openDataOutputStream()) {
+				FrameDecoder frames = new FrameDecoder(dataIn, maxFrameSize);
+				OutputStream out = new BufferedOutputStream(dataOut, 8192);
+				this.out = out;
+				while (true) {
+					String command;
+					try {
+						command = frames.next();
+					} catch (FrameDecoder.FrameException e) {
+						Util.println("Bluetooth client " + this.name + ": " + e.getMessage());
+						synchronized (out) {
+							error(out, null, null, e.getMessage());
+							out.write(FrameDecoder.ETX);
+							out.flush();
+						}
+						continue;
+					}
+					if (command == null) {
+						break;
+					}
+					this.lastActivity = System.currentTimeMillis();
+					// Pushed events are written between the responses, never in the middle of one
+					synchronized (out) {
+						handleCommand(command, out, this);
+						out.flush();
+					}
+					this.lastActivity = System.currentTimeMillis();
+				}
+			} catch (IOException e) {
+				Util.println("Bluetooth client " + this.name + ": " + e.getMessage());
+			} finally {
+				unsubscribe();
+				close();
+				BTServer.this.clients.remove(this);
+				Util.println("Bluetooth connection closed");
 			}
-			case "getTemperatureFile": {
-				String content = "";
-				String prm = cmd.getData().getString("fname", "");
-				if( prm.length() == 0) {
-					throw new CommandException("String parameter 'fname' not found.");
-				}
-				content = Files.readString(Paths.get(Terrarium.traceFolder + "/" + cmd.getData().getString("fname")));
-				JsonReader jsonReader = Json.createReader(new StringReader("{\"content\":\"" + content.replace("\n", "\\n") + "\"}"));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
-				break;
+		}
+
+		void close() {
+			try {
+				this.sc.close();
+			} catch (IOException e) {
 			}
-			case "getStateFile": {
-				String content = "";
-				String prm = cmd.getData().getString("fname", "");
-				if( prm.length() == 0) {
-					throw new CommandException("String parameter 'fname' not found.");
-				}
-				content = Files.readString(Paths.get(Terrarium.traceFolder + "/" + cmd.getData().getString("fname")));
-				JsonReader jsonReader = Json.createReader(new StringReader("{\"content\":\"" + content.replace("\n", "\\n") + "\"}"));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
-				break;
+		}
+
+		@Override
+		public synchronized void subscribe(Set<String> types) {
+			if (this.subscription != null) {
+				this.subscription.close();
 			}
-			default:
-				throw new CommandException("Command '" + cmd.getCmd() + "' is not implemented.");
+			this.subscription = new Subscription(this.name, this.out, types);
+			this.subscription.start();
+		}
+
+		@Override
+		public synchronized void unsubscribe() {
+			if (this.subscription != null) {
+				this.subscription.close();
+				this.subscription = null;
 			}
-			// Construct response
-			out.write(jsonb.toJson(res).getBytes());
-			out.write(0x03); // ETX character
+		}
+
+		synchronized boolean isSubscribed() {
+			return (this.subscription != null) && !this.subscription.isClosed();
+		}
+	}
+
+	private static String friendlyName(StreamConnection sc) {
+		try {
+			return RemoteDevice.getRemoteDevice(sc).getFriendlyName(false);
 		} catch (Exception e) {
-			if (e instanceof CommandException) {
-				System.err.println(e.getMessage());
-				JsonReader jsonReader = Json.createReader(new StringReader("{\"error\":\"" + e.getMessage() + "\"}"));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
+			return "unknown";
+		}
+	}
+
+	/**
+	 * Execute the command, or the batch of commands (see {@link Batch}), in the frame and write the response
+	 * followed by an ETX.
+	 */
+	public static void handleCommand (String command, OutputStream out) throws IOException {
+		handleCommand(command, out, null);
+	}
+
+	public static void handleCommand (String command, OutputStream out, Session session) throws IOException {
+		JsonValue frame;
+		try {
+			frame = JsonCodec.parseValue(command);
+		} catch (JsonException e) {
+			frame = JsonValue.NULL;
+		}
+		if (frame.getValueType() == ValueType.ARRAY) {
+			Batch.execute(frame, false, out, session);
+		} else if ((frame.getValueType() == ValueType.OBJECT) && frame.asJsonObject().containsKey("batch")) {
+			Batch.execute(frame.asJsonObject().get("batch"), frame.asJsonObject().getBoolean("atomic", false), out, session);
+		} else {
+			execute(frame, out, session);
+		}
+		out.write(FrameDecoder.ETX);
+	}
+
+	/**
+	 * Execute one command and write its response.
+	 *
+	 * The response to a mutating command with a msgId is kept in a {@link ResponseCache}, so when the app sends the
+	 * command again because it did not get the response, the command is not executed twice.
+	 *
+	 * The response of a command that holds the Terrarium lock is written to a buffer first, so the lock is not held
+	 * while the client is reading; the response of an unlocked command (trace files) is streamed to the client.
+	 * When a streamed response fails halfway there is no way to send a valid response, so the error is thrown.
+	 */
+	static void execute(JsonValue frame, OutputStream out, Session session) throws IOException {
+		Command cmd = null;
+		ResponseWriter res = null;
+		try {
+			cmd = toCommand(frame);
+			Commands.CommandDef def = lookup(cmd);
+			if (def.isMutating() && frame.asJsonObject().containsKey("msgId")) {
+				byte[] response;
+				// Under the lock, so a retry on another connection waits for the first one and gets its response
+				synchronized (Terrarium.getInstance()) {
+					response = responses.get(cmd.getMsgId(), cmd.getCmd());
+					if (response == null) {
+						ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+						res = new ResponseWriter(buffer, cmd.getMsgId(), cmd.getCmd());
+						def.execute(cmd.getData(), session, res);
+						response = buffer.toByteArray();
+						responses.put(cmd.getMsgId(), cmd.getCmd(), response);
+					} else {
+						Util.println("Command '" + cmd.getCmd() + "' with msgId " + cmd.getMsgId() + " has already been executed");
+					}
+				}
+				out.write(response);
+			} else if (def.isLocked()) {
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+				res = new ResponseWriter(buffer, cmd.getMsgId(), cmd.getCmd());
+				def.execute(cmd.getData(), session, res);
+				buffer.writeTo(out);
 			} else {
-				e.printStackTrace();
-				StringWriter sw = new StringWriter();
-				PrintWriter pw = new PrintWriter(sw);
-				e.printStackTrace(pw);
-				JsonReader jsonReader = Json.createReader(new StringReader("{\"error\":\"" + sw.toString().replace("\n", "\\n").replace("\t", "    ") + "\"}"));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
+				res = new ResponseWriter(out, cmd.getMsgId(), cmd.getCmd());
+				def.execute(cmd.getData(), session, res);
+			}
+		} catch (CommandException e) {
+			System.err.println(e.getMessage());
+			error(out, res, cmd, e.getMessage());
+		} catch (Exception e) {
+			e.printStackTrace();
+			error(out, res, cmd, stackTrace(e));
+		}
+	}
+
+	static Command toCommand(JsonValue frame) throws CommandException {
+		if (frame.getValueType() != ValueType.OBJECT) {
+			throw new CommandException("Command is not a valid JSON object.");
+		}
+		JsonObject json = frame.asJsonObject();
+		JsonValue data = json.get("data");
+		Command cmd = new Command(json.getString("cmd", ""), (data instanceof JsonObject) ? (JsonObject) data : null);
+		if (json.containsKey("msgId")) {
+			try {
+				cmd.setMsgId(java.util.UUID.fromString(json.getString("msgId")));
+			} catch (ClassCastException | IllegalArgumentException e) {
+				throw new CommandException("Parameter 'msgId' is not a valid UUID.");
 			}
-			out.write(jsonb.toJson(res).getBytes());
-			out.write(0x03); // ETX character
 		}
+		return cmd;
+	}
+
+	static Commands.CommandDef lookup(Command cmd) throws CommandException {
+		Commands.CommandDef def = Commands.get(cmd.getCmd());
+		if (def == null) {
+			throw new CommandException("Command '" + cmd.getCmd() + "' is not implemented.");
+		}
+		return def;
+	}
+
+	/**
+	 * Write an error response for the command (null if the command could not be read).
+	 */
+	static void error(OutputStream out, ResponseWriter res, Command cmd, String msg) throws IOException {
+		String name = cmd == null ? "" : cmd.getCmd();
+		if ((res != null) && res.isStarted() && (res.getOutputStream() == out)) {
+			throw new IOException("Response to command '" + name + "' failed: " + msg);
+		}
+		new ResponseWriter(out, cmd == null ? java.util.UUID.randomUUID() : cmd.getMsgId(), name)
+				.object(JsonCodec.PROVIDER.createObjectBuilder().add("error", msg).build());
 	}
-}
 
+	static String stackTrace(Exception e) {
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		e.printStackTrace(pw);
+		return sw.toString().replace("\t", "    ");
+	}
+}
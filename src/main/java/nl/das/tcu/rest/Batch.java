@@ -0,0 +1,165 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.json.JsonArray;
+import javax.json.JsonValue;
+import javax.json.JsonValue.ValueType;
+
+import nl.das.tcu.Util;
+import nl.das.tcu.objects.Terrarium;
+import nl.das.tcu.objects.TerrariumConfig;
+
+/**
+ * Several commands in one frame, so the app needs one Bluetooth round-trip instead of one per command:
+ * <pre>[{"cmd":...}, {"cmd":...}, ...]</pre>
+ * or
+ * <pre>{"atomic":true, "batch":[{"cmd":...}, {"cmd":...}, ...]}</pre>
+ * The commands are executed in order and their responses are sent back in one frame, as an array in the same
+ * order. Settings changes are not saved one by one, but once after the last command.
+ *
+ * An atomic batch is executed while holding the Terrarium lock. It may only contain commands that change the
+ * timers, rulesets or sprayer rule and commands that read the terrarium, because only those changes can be undone
+ * and no trace file is read while the control loop waits for the lock. All commands are checked before the first
+ * one is executed; if a command fails the timers, rulesets and sprayer rule are restored and every command gets
+ * an error response. The responses to the mutating commands with a msgId are kept in the {@link ResponseCache} once the
+ * whole batch has succeeded, so when the app sends the batch again those commands are not executed a second time.
+ */
+public class Batch {
+
+	public static int maxCommands = 32;
+
+	private Batch() {
+	}
+
+	static void execute(JsonValue batch, boolean atomic, OutputStream out, Session session) throws IOException {
+		if ((batch.getValueType() != ValueType.ARRAY) || batch.asJsonArray().isEmpty() || (batch.asJsonArray().size() > maxCommands)) {
+			out.write('[');
+			BTServer.error(out, null, null, "Batch must be an array of 1 to " + maxCommands + " commands.");
+			out.write(']');
+			return;
+		}
+		JsonArray cmds = batch.asJsonArray();
+		Terrarium t = Terrarium.getInstance();
+		if (atomic) {
+			synchronized (t) {
+				executeAtomic(cmds, t, out, session);
+			}
+			return;
+		}
+		t.beginSettingsBatch();
+		try {
+			out.write('[');
+			for (int i = 0; i < cmds.size(); i++) {
+				if (i > 0) {
+					out.write(',');
+				}
+				BTServer.execute(cmds.get(i), out, session);
+			}
+			out.write(']');
+		} finally {
+			t.endSettingsBatch();
+		}
+	}
+
+	private static void executeAtomic(JsonArray json, Terrarium t, OutputStream out, Session session) throws IOException {
+		int n = json.size();
+		Command[] cmds = new Command[n];
+		Commands.CommandDef[] defs = new Commands.CommandDef[n];
+		String[] errors = new String[n];
+		int failed = -1;
+		for (int i = 0; i < n; i++) {
+			try {
+				cmds[i] = BTServer.toCommand(json.get(i));
+				defs[i] = BTServer.lookup(cmds[i]);
+				if (!defs[i].isLocked()) {
+					throw new CommandException("Command '" + cmds[i].getCmd() + "' cannot be part of an atomic batch, because it reads trace files.");
+				}
+				if (defs[i].isMutating() && !defs[i].isSetting()) {
+					throw new CommandException("Command '" + cmds[i].getCmd() + "' cannot be part of an atomic batch, because it cannot be undone.");
+				}
+				defs[i].check(cmds[i].getData());
+			} catch (CommandException e) {
+				errors[i] = e.getMessage();
+				failed = failed < 0 ? i : failed;
+			}
+		}
+		if (failed >= 0) {
+			writeErrors(cmds, errors, failed, out);
+			return;
+		}
+		TerrariumConfig before = t.copySettings();
+		byte[][] responses = new byte[n][];
+		boolean[] cache = new boolean[n];
+		t.beginSettingsBatch();
+		try {
+			for (int i = 0; (i < n) && (failed < 0); i++) {
+				cache[i] = defs[i].isMutating() && json.get(i).asJsonObject().containsKey("msgId");
+				if (cache[i]) {
+					responses[i] = BTServer.responses.get(cmds[i].getMsgId(), cmds[i].getCmd());
+					if (responses[i] != null) {
+						Util.println("Command '" + cmds[i].getCmd() + "' with msgId " + cmds[i].getMsgId() + " has already been executed");
+						cache[i] = false;
+						continue;
+					}
+				}
+				try {
+					ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+					defs[i].execute(cmds[i].getData(), session, new ResponseWriter(buffer, cmds[i].getMsgId(), cmds[i].getCmd()));
+					responses[i] = buffer.toByteArray();
+				} catch (CommandException e) {
+					System.err.println(e.getMessage());
+					errors[i] = e.getMessage();
+					failed = i;
+				} catch (Exception e) {
+					e.printStackTrace();
+					errors[i] = BTServer.stackTrace(e);
+					failed = i;
+				}
+			}
+			if (failed >= 0) {
+				t.restoreSettings(before);
+			}
+		} finally {
+			t.endSettingsBatch();
+		}
+		if (failed >= 0) {
+			writeErrors(cmds, errors, failed, out);
+			return;
+		}
+		out.write('[');
+		for (int i = 0; i < n; i++) {
+			if (i > 0) {
+				out.write(',');
+			}
+			if (cache[i]) {
+				BTServer.responses.put(cmds[i].getMsgId(), cmds[i].getCmd(), responses[i]);
+			}
+			out.write(responses[i]);
+		}
+		out.write(']');
+	}
+
+	private static void writeErrors(Command[] cmds, String[] errors, int failed, OutputStream out) throws IOException {
+		out.write('[');
+		for (int i = 0; i < cmds.length; i++) {
+			if (i > 0) {
+				out.write(',');
+			}
+			String msg = errors[i] != null ? errors[i] : "Batch is not executed, because command " + (failed + 1) + " failed.";
+			BTServer.error(out, null, cmds[i], msg);
+		}
+		out.write(']');
+	}
+}
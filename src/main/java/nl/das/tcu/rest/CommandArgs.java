@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.rest;
+
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+
+/**
+ * The data of a Bluetooth command after it has been checked against the parameters of the command.
+ */
+public class CommandArgs {
+
+	private final String cmd;
+	private final JsonObject data;
+	private final Session session;
+
+	CommandArgs(String cmd, JsonObject data, Session session) {
+		this.cmd = cmd;
+		this.data = data;
+		this.session = session;
+	}
+
+	public String getCmd() {
+		return this.cmd;
+	}
+
+	/**
+	 * @return the data of the command as it was received (can be null)
+	 */
+	public JsonObject getData() {
+		return this.data;
+	}
+
+	/**
+	 * @return the connection the command was received on (null if there is none, as in tests)
+	 */
+	public Session getSession() {
+		return this.session;
+	}
+
+	public String getString(String name) {
+		return this.data.getString(name);
+	}
+
+	public String getString(String name, String defaultValue) {
+		return this.data == null ? defaultValue : this.data.getString(name, defaultValue);
+	}
+
+	public int getInt(String name) {
+		return this.data.getInt(name);
+	}
+
+	public int getInt(String name, int defaultValue) {
+		return this.data == null ? defaultValue : this.data.getInt(name, defaultValue);
+	}
+
+	public long getLong(String name, long defaultValue) {
+		return ((this.data == null) || !this.data.containsKey(name)) ? defaultValue : this.data.getJsonNumber(name).longValue();
+	}
+
+	public boolean getBoolean(String name, boolean defaultValue) {
+		return this.data == null ? defaultValue : this.data.getBoolean(name, defaultValue);
+	}
+
+	public JsonObject getObject(String name) {
+		return this.data.getJsonObject(name);
+	}
+
+	public JsonArray getArray(String name) {
+		return this.data.getJsonArray(name);
+	}
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.rest;
+
+/**
+ * Executes one Bluetooth command.
+ */
+@FunctionalInterface
+public interface CommandHandler {
+
+	/**
+	 * @param args the data of the command, already checked against the parameters of the command
+	 * @param res the response; a command that writes nothing gets an empty response
+	 * @throws CommandException when the command cannot be executed with this data
+	 */
+	void execute(CommandArgs args, ResponseWriter res) throws Exception;
+}
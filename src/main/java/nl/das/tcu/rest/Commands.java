@@ -0,0 +1,343 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.rest;
+
+import static nl.das.tcu.JsonCodec.JSONB;
+import static nl.das.tcu.JsonCodec.PROVIDER;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.JsonValue.ValueType;
+import javax.json.bind.JsonbException;
+
+import nl.das.tcu.Util;
+import nl.das.tcu.events.ChangeLog;
+import nl.das.tcu.objects.Ruleset;
+import nl.das.tcu.objects.SensorHistory;
+import nl.das.tcu.objects.SprayerRule;
+import nl.das.tcu.objects.Terrarium;
+import nl.das.tcu.objects.Timer;
+import nl.das.tcu.trace.TemperatureRollup;
+import nl.das.tcu.trace.TemperatureRollup.Resolution;
+import nl.das.tcu.trace.TraceFiles;
+import nl.das.tcu.trace.TraceReader;
+import nl.das.tcu.trace.TraceTransfer;
+
+/**
+ * The Bluetooth commands, each with its parameters and its handler.
+ *
+ * A command is registered as
+ * <ul>
+ * <li>query: reads the terrarium; executed with the Terrarium lock</li>
+ * <li>update: changes the state of the terrarium; executed with the Terrarium lock</li>
+ * <li>setting: changes the timers, rulesets or sprayer rule; executed with the Terrarium lock and can be undone,
+ * so it can be part of an atomic {@link Batch}</li>
+ * <li>unlocked: only reads trace files or data with its own lock, so it does not hold up the control loop</li>
+ * </ul>
+ * To add a command, register it in the static block below.
+ */
+public class Commands {
+
+	/**
+	 * A registered command.
+	 */
+	public static class CommandDef {
+		private final String name;
+		private final CommandHandler handler;
+		private final Param[] params;
+		private final boolean mutating;
+		private final boolean locked;
+		private final boolean setting;
+		private final boolean needsData;
+
+		CommandDef(String name, CommandHandler handler, Param[] params, boolean mutating, boolean locked, boolean setting) {
+			this.name = name;
+			this.handler = handler;
+			this.params = params;
+			this.mutating = mutating;
+			this.locked = locked;
+			this.setting = setting;
+			boolean required = false;
+			for (Param p : params) {
+				required |= p.isRequired();
+			}
+			this.needsData = required;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * @return true if the command changes the state or the settings
+		 */
+		public boolean isMutating() {
+			return this.mutating;
+		}
+
+		/**
+		 * Check the data against the parameters of the command.
+		 */
+		public void check(JsonObject data) throws CommandException {
+			if (this.needsData && (data == null)) {
+				throw new CommandException("No data found.");
+			}
+			for (Param p : this.params) {
+				p.check(data);
+			}
+		}
+
+		/**
+		 * Check the data against the parameters, execute the command and write its response.
+		 */
+		public void execute(JsonObject data, Session session, ResponseWriter res) throws Exception {
+			check(data);
+			CommandArgs args = new CommandArgs(this.name, data, session);
+			if (!this.locked) {
+				this.handler.execute(args, res);
+			} else {
+				synchronized (Terrarium.getInstance()) {
+					this.handler.execute(args, res);
+				}
+			}
+			res.finish();
+		}
+
+		/**
+		 * @return true if the command is executed with the Terrarium lock
+		 */
+		public boolean isLocked() {
+			return this.locked;
+		}
+
+		/**
+		 * @return true if the command only changes the timers, rulesets or sprayer rule
+		 */
+		public boolean isSetting() {
+			return this.setting;
+		}
+	}
+
+	private static final Map<String, CommandDef> commands = new HashMap<>();
+
+	private Commands() {
+	}
+
+	public static CommandDef get(String name) {
+		return commands.get(name);
+	}
+
+	public static Set<String> names() {
+		return Collections.unmodifiableSet(commands.keySet());
+	}
+
+	public static void query(String name, CommandHandler handler, Param... params) {
+		commands.put(name, new CommandDef(name, handler, params, false, true, false));
+	}
+
+	public static void update(String name, CommandHandler handler, Param... params) {
+		commands.put(name, new CommandDef(name, handler, params, true, true, false));
+	}
+
+	public static void setting(String name, CommandHandler handler, Param... params) {
+		commands.put(name, new CommandDef(name, handler, params, true, true, true));
+	}
+
+	public static void unlocked(String name, CommandHandler handler, Param... params) {
+		commands.put(name, new CommandDef(name, handler, params, false, false, false));
+	}
+
+	private static Terrarium t() {
+		return Terrarium.getInstance();
+	}
+
+	static {
+		/********************************************* Sensors *********************************************/
+		query("getSensors", (a, r) -> r.pojo(t().getSensors()));
+		unlocked("getRecentSensors", (a, r) -> r.object(SensorHistory.getInstance().getRecent(a.getInt("minutes", 60))),
+				Param.integer("minutes", 1, SensorHistory.CAPACITY).optional());
+		update("setSensors", (a, r) -> t().setSensors(a.getInt("roomtemp"), a.getInt("terrtemp")),
+				Param.integer("roomtemp", -40, 80), Param.integer("terrtemp", -40, 80));
+		update("setTestOff", (a, r) -> t().setTestOff());
+
+		/********************************************* State *********************************************/
+		query("getState", (a, r) -> r.json(t().getStateSnapshot().getBytes()));
+		unlocked("getChanges", (a, r) -> r.object(ChangeLog.getInstance().since(a.getLong("since", -1L))),
+				Param.integer("since", Long.MIN_VALUE, Long.MAX_VALUE).optional());
+		unlocked("subscribe", (a, r) -> {
+			session(a).subscribe(types(a));
+			r.object(PROVIDER.createObjectBuilder()
+					.add("seq", ChangeLog.getInstance().getSeq())
+					.add("state", t().getStateSnapshot().getJson())
+					.build());
+		}, Param.array("types").optional());
+		unlocked("unsubscribe", (a, r) -> session(a).unsubscribe());
+		update("setDeviceOn", (a, r) -> t().setDeviceOn(a.getString("device"), -1), Param.device("device"));
+		update("setDeviceOff", (a, r) -> t().setDeviceOff(a.getString("device")), Param.device("device"));
+		update("setDeviceOnFor", (a, r) -> t().setDeviceOn(a.getString("device"), Util.now(LocalDateTime.now()) + a.getInt("period")),
+				Param.device("device"), Param.integer("period", 1, 3600));
+		update("setDeviceManualOn", (a, r) -> t().setDeviceManualOn(a.getString("device")), Param.device("device"));
+		update("setDeviceManualOff", (a, r) -> t().setDeviceManualOff(a.getString("device")), Param.device("device"));
+		update("setLifecycleCounter", (a, r) -> t().setLifecycleCounter(a.getString("device"), a.getInt("hoursOn")),
+				Param.device("device"), Param.integer("hoursOn", 1, Integer.MAX_VALUE));
+		query("getProperties", (a, r) -> r.json(t().getProperties()));
+		update("setTraceOn", (a, r) -> {
+			t().setNow(LocalDateTime.now());
+			t().setTrace(true);
+		});
+		update("setTraceOff", (a, r) -> t().setTrace(false));
+
+		/********************************************* Settings *********************************************/
+		query("getTimersForDevice", (a, r) -> r.pojo("timers", t().getTimersForDevice(a.getString("device"))), Param.device("device"));
+		setting("replaceTimers", (a, r) -> {
+			try {
+				t().replaceTimers(JSONB.fromJson(a.getArray("timers").toString(), Timer[].class));
+			} catch (JsonbException e) {
+				throw new CommandException("JsonArray parameter 'timers' does not contain an array of Timer json objects.");
+			}
+		}, Param.array("timers"));
+		query("getRuleset", (a, r) -> r.pojo(t().getRuleset(rulesetNr(a))), Param.integer("rulesetnr", 1, Integer.MAX_VALUE));
+		setting("saveRuleset", (a, r) -> {
+			int nr = rulesetNr(a);
+			try {
+				t().replaceRuleset(nr, JSONB.fromJson(a.getObject("ruleset").toString(), Ruleset.class));
+			} catch (JsonbException e) {
+				throw new CommandException("JsonObject parameter 'ruleset' does not contain a Ruleset json object.");
+			}
+		}, Param.object("ruleset"), Param.integer("rulesetnr", 1, Integer.MAX_VALUE));
+		query("getSprayerRule", (a, r) -> r.pojo(t().getSprayerRule()));
+		setting("setSprayerRule", (a, r) -> {
+			if (a.getData() == null) {
+				throw new CommandException("No data found.");
+			}
+			try {
+				t().setSprayerRule(JSONB.fromJson(a.getData().toString(), SprayerRule.class));
+			} catch (JsonbException e) {
+				throw new CommandException("Data does not contain a SprayerRule json object.");
+			}
+		});
+
+		/********************************************* History *********************************************/
+		unlocked("getTempTracefiles", (a, r) -> r.pojo("files", Util.listTraceFiles(Terrarium.traceFolder, "temp_")));
+		unlocked("getStateTracefiles", (a, r) -> r.pojo("files", Util.listTraceFiles(Terrarium.traceFolder, "state_")));
+		unlocked("getTemperatureFile", Commands::traceFile, Param.string("fname"));
+		unlocked("getStateFile", Commands::traceFile, Param.string("fname"));
+		unlocked("openTraceFile", (a, r) -> r.object(transfer(() -> TraceTransfer.open(Terrarium.traceFolder, a.getString("fname")), a)),
+				Param.string("fname"));
+		unlocked("readTraceChunk", (a, r) -> r.object(transfer(() -> TraceTransfer.readChunk(Terrarium.traceFolder, a.getString("fname"),
+				a.getLong("offset", 0L), a.getInt("length", TraceTransfer.maxChunkSize), a.getLong("size", -1L), a.getBoolean("deflate", false)), a)),
+				Param.string("fname"), Param.integer("offset", 0, Long.MAX_VALUE), Param.integer("length", 1, Integer.MAX_VALUE).optional(),
+				Param.integer("size", 0, Long.MAX_VALUE).optional(), Param.bool("deflate").optional());
+		unlocked("getTemperatureHistory", (a, r) -> history(a, r, "temp_"), Param.string("from"), Param.string("to").optional());
+		unlocked("getStateHistory", (a, r) -> history(a, r, "state_"), Param.string("from"), Param.string("to").optional());
+		unlocked("getTemperatureRollup", (a, r) -> {
+			Resolution res = resolution(a);
+			r.object(PROVIDER.createObjectBuilder()
+					.add("res", res.getName())
+					.add("rollup", TemperatureRollup.toJson(TemperatureRollup.of(Terrarium.traceFolder).query(res, from(a), to(a))))
+					.build());
+		}, Param.string("from"), Param.string("to").optional(), Param.string("res").optional());
+	}
+
+	private static int rulesetNr(CommandArgs a) throws CommandException {
+		int nr = a.getInt("rulesetnr");
+		if (nr > Terrarium.cfg.getRulesets().length) {
+			throw new CommandException("Integer parameter 'rulesetnr' must be >= 1 and <= " + Terrarium.cfg.getRulesets().length + ".");
+		}
+		return nr;
+	}
+
+	/**
+	 * The file is opened before anything is written, so a missing file gives an error response.
+	 */
+	private static void traceFile(CommandArgs a, ResponseWriter r) throws Exception {
+		r.text("content", TraceFiles.newInputStream(Paths.get(Terrarium.traceFolder, a.getString("fname")), 0L));
+	}
+
+	private static Session session(CommandArgs a) throws CommandException {
+		if (a.getSession() == null) {
+			throw new CommandException("Command '" + a.getCmd() + "' needs a Bluetooth connection.");
+		}
+		return a.getSession();
+	}
+
+	private static Set<String> types(CommandArgs a) throws CommandException {
+		if ((a.getData() == null) || !a.getData().containsKey("types")) {
+			return null;
+		}
+		Set<String> types = new HashSet<>();
+		for (JsonValue v : a.getArray("types")) {
+			if (v.getValueType() != ValueType.STRING) {
+				throw new CommandException("JsonArray parameter 'types' does not contain an array of event types.");
+			}
+			types.add(((JsonString) v).getString());
+		}
+		return types;
+	}
+
+	private interface Transfer {
+		JsonObject get() throws IOException;
+	}
+
+	private static JsonObject transfer(Transfer t, CommandArgs a) throws Exception {
+		try {
+			return t.get();
+		} catch (NoSuchFileException e) {
+			throw new CommandException("Trace file '" + a.getString("fname") + "' not found.");
+		} catch (TraceTransfer.BusyException e) {
+			throw new CommandException(e.getMessage());
+		}
+	}
+
+	private static void history(CommandArgs a, ResponseWriter r, String prefix) throws Exception {
+		LocalDateTime from = from(a);
+		LocalDateTime to = to(a);
+		Appendable content = r.beginText("content");
+		TraceReader.copyRange(Terrarium.traceFolder, prefix, from, to, content);
+		r.endText(content);
+	}
+
+	private static LocalDateTime from(CommandArgs a) throws CommandException {
+		return time("from", a.getString("from"));
+	}
+
+	private static LocalDateTime to(CommandArgs a) throws CommandException {
+		String to = a.getString("to", "");
+		return to.length() > 0 ? time("to", to) : LocalDateTime.now();
+	}
+
+	private static LocalDateTime time(String name, String value) throws CommandException {
+		try {
+			return TraceReader.parseTime(value);
+		} catch (DateTimeParseException e) {
+			throw new CommandException("String parameter '" + name + "' must be a time as yyyy-MM-dd HH:mm:ss.");
+		}
+	}
+
+	private static Resolution resolution(CommandArgs a) throws CommandException {
+		try {
+			return Resolution.of(a.getString("res", "1h"));
+		} catch (IllegalArgumentException e) {
+			throw new CommandException("String parameter 'res' must be one of 5m, 1h, 1d.");
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits the Bluetooth input stream into commands, each terminated by an ETX (0x03) character.
+ *
+ * The stream is read in blocks into a buffer that is reused for the whole connection and scanned for ETX,
+ * instead of reading it byte by byte. A command must be valid UTF-8 and can be at most <code>maxFrameSize</code> bytes;
+ * the bytes of a larger command are skipped (not kept) until its ETX, so memory use stays bounded.
+ */
+public class FrameDecoder {
+
+	public static final byte ETX = 0x03;
+
+	/**
+	 * The command could not be decoded. The rest of the stream can still be read.
+	 */
+	public static class FrameException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public FrameException(String message) {
+			super(message);
+		}
+	}
+
+	private final InputStream in;
+	private final int maxFrameSize;
+	private final ByteBuffer buf;
+	private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPORT)
+			.onUnmappableCharacter(CodingErrorAction.REPORT);
+	private byte[] frame = new byte[1024];
+	private int len;
+
+	public FrameDecoder(InputStream in, int maxFrameSize) {
+		this(in, maxFrameSize, 4096);
+	}
+
+	public FrameDecoder(InputStream in, int maxFrameSize, int bufferSize) {
+		this.in = in;
+		this.maxFrameSize = maxFrameSize;
+		this.buf = ByteBuffer.allocate(bufferSize);
+		this.buf.flip();
+	}
+
+	/**
+	 * @return the next command without the ETX or null at the end of the stream (an incomplete last command is dropped)
+	 * @throws FrameException if the command is too large or is not valid UTF-8
+	 */
+	public String next() throws IOException {
+		boolean tooLarge = false;
+		this.len = 0;
+		while (true) {
+			if (!this.buf.hasRemaining()) {
+				this.buf.clear();
+				int n = this.in.read(this.buf.array(), 0, this.buf.capacity());
+				if (n < 0) {
+					this.buf.limit(0);
+					return null;
+				}
+				this.buf.limit(n);
+			}
+			byte[] a = this.buf.array();
+			int start = this.buf.position();
+			int end = this.buf.limit();
+			int i = start;
+			while ((i < end) && (a[i] != ETX)) {
+				i++;
+			}
+			if (!tooLarge) {
+				if ((this.len + (i - start)) > this.maxFrameSize) {
+					tooLarge = true;
+				} else {
+					append(a, start, i - start);
+				}
+			}
+			if (i < end) {
+				this.buf.position(i + 1);
+				if (tooLarge) {
+					throw new FrameException("Command is larger than " + this.maxFrameSize + " bytes");
+				}
+				return decode();
+			}
+			this.buf.position(end);
+		}
+	}
+
+	private void append(byte[] a, int offset, int n) {
+		if ((this.len + n) > this.frame.length) {
+			byte[] f = new byte[Math.min(Math.max(this.frame.length * 2, this.len + n), this.maxFrameSize)];
+			System.arraycopy(this.frame, 0, f, 0, this.len);
+			this.frame = f;
+		}
+		System.arraycopy(a, offset, this.frame, this.len, n);
+		this.len += n;
+	}
+
+	private String decode() throws FrameException {
+		try {
+			this.decoder.reset();
+			return this.decoder.decode(ByteBuffer.wrap(this.frame, 0, this.len)).toString();
+		} catch (CharacterCodingException e) {
+			throw new FrameException("Command is not valid UTF-8");
+		}
+	}
+}
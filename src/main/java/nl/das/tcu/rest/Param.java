@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.rest;
+
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.JsonValue.ValueType;
+
+import nl.das.tcu.objects.Terrarium;
+
+/**
+ * A parameter in the data of a Bluetooth command. The parameters of a command are defined once when the command
+ * is registered and checked before the command is executed, so the handler gets valid values only.
+ */
+public class Param {
+
+	enum Type { STRING, DEVICE, INTEGER, BOOLEAN, OBJECT, ARRAY }
+
+	private final String name;
+	private final Type type;
+	private final boolean required;
+	private final long min;
+	private final long max;
+
+	private Param(String name, Type type, boolean required, long min, long max) {
+		this.name = name;
+		this.type = type;
+		this.required = required;
+		this.min = min;
+		this.max = max;
+	}
+
+	public static Param string(String name) {
+		return new Param(name, Type.STRING, true, 0, 0);
+	}
+
+	/**
+	 * A string that must be the name of one of the devices.
+	 */
+	public static Param device(String name) {
+		return new Param(name, Type.DEVICE, true, 0, 0);
+	}
+
+	public static Param integer(String name, long min, long max) {
+		return new Param(name, Type.INTEGER, true, min, max);
+	}
+
+	public static Param bool(String name) {
+		return new Param(name, Type.BOOLEAN, true, 0, 0);
+	}
+
+	public static Param object(String name) {
+		return new Param(name, Type.OBJECT, true, 0, 0);
+	}
+
+	public static Param array(String name) {
+		return new Param(name, Type.ARRAY, true, 0, 0);
+	}
+
+	/**
+	 * @return the same parameter, but it may be left out
+	 */
+	public Param optional() {
+		return new Param(this.name, this.type, false, this.min, this.max);
+	}
+
+	public boolean isRequired() {
+		return this.required;
+	}
+
+	void check(JsonObject data) throws CommandException {
+		JsonValue v = data == null ? null : data.get(this.name);
+		if ((v == null) || (v.getValueType() == ValueType.NULL)) {
+			if (this.required) {
+				throw new CommandException(notFound());
+			}
+			return;
+		}
+		switch (this.type) {
+		case STRING:
+		case DEVICE:
+			if ((v.getValueType() != ValueType.STRING) || ((JsonString) v).getString().isEmpty()) {
+				throw new CommandException(notFound());
+			}
+			if ((this.type == Type.DEVICE) && (Terrarium.getInstance().getDeviceIndex(((JsonString) v).getString()) < 0)) {
+				throw new CommandException("Device '" + ((JsonString) v).getString() + "' is unknown.");
+			}
+			break;
+		case INTEGER:
+			if ((v.getValueType() != ValueType.NUMBER) || !((JsonNumber) v).isIntegral()) {
+				throw new CommandException(notFound());
+			}
+			long n = ((JsonNumber) v).longValue();
+			if ((n < this.min) || (n > this.max)) {
+				throw new CommandException("Integer parameter '" + this.name + "' must be >= " + this.min + " and <= " + this.max + ".");
+			}
+			break;
+		case BOOLEAN:
+			if ((v.getValueType() != ValueType.TRUE) && (v.getValueType() != ValueType.FALSE)) {
+				throw new CommandException(notFound());
+			}
+			break;
+		case OBJECT:
+			if (v.getValueType() != ValueType.OBJECT) {
+				throw new CommandException(notFound());
+			}
+			break;
+		case ARRAY:
+			if (v.getValueType() != ValueType.ARRAY) {
+				throw new CommandException(notFound());
+			}
+			break;
+		}
+	}
+
+	private String notFound() {
+		switch (this.type) {
+		case INTEGER:
+			return "Integer parameter '" + this.name + "' not found.";
+		case BOOLEAN:
+			return "Boolean parameter '" + this.name + "' not found.";
+		case OBJECT:
+			return "JsonObject parameter '" + this.name + "' not found.";
+		case ARRAY:
+			return "JsonArray parameter '" + this.name + "' not found.";
+		default:
+			return "String parameter '" + this.name + "' not found.";
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The responses to the most recent mutating commands by msgId, least recently used first out.
+ * When the app did not receive a response (lost ETX, broken connection) it sends the command again with the same
+ * msgId; it then gets the cached response and the command is not executed a second time.
+ */
+public class ResponseCache {
+
+	private static class Cached {
+		final String cmd;
+		final byte[] response;
+
+		Cached(String cmd, byte[] response) {
+			this.cmd = cmd;
+			this.response = response;
+		}
+	}
+
+	private final Map<UUID, Cached> entries;
+
+	public ResponseCache(int capacity) {
+		this.entries = new LinkedHashMap<UUID, Cached>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<UUID, Cached> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @return the response to the command with this msgId, or null if it has not been executed (recently)
+	 */
+	public synchronized byte[] get(UUID msgId, String cmd) {
+		Cached e = this.entries.get(msgId);
+		// Another command with the same msgId is not a retry
+		return ((e == null) || !e.cmd.equals(cmd)) ? null : e.response;
+	}
+
+	public synchronized void put(UUID msgId, String cmd, byte[] response) {
+		this.entries.put(msgId, new Cached(cmd, response));
+	}
+
+	public synchronized int size() {
+		return this.entries.size();
+	}
+}
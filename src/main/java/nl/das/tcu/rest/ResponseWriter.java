@@ -0,0 +1,294 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.rest;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import javax.json.JsonObject;
+import javax.json.stream.JsonGenerator;
+
+import nl.das.tcu.JsonCodec;
+
+/**
+ * Writes the response to one Bluetooth command straight to the output stream:
+ * <pre>{"msgId":"...","command":"...","response":{...}}</pre>
+ * The response data is written once, by a JsonGenerator (JSON-P objects), by JSON-B (settings objects) or as
+ * pre-serialized JSON (the state snapshot). Text such as the content of a trace file is escaped and written in
+ * chunks while it is read, so it is never held in memory as a whole.
+ */
+public class ResponseWriter {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final OutputStream out;
+	private final Writer writer;
+	private final UUID msgId;
+	private final String command;
+	private boolean started;
+
+	public ResponseWriter(OutputStream out, UUID msgId, String command) {
+		this.out = out;
+		this.writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+		this.msgId = msgId;
+		this.command = command;
+	}
+
+	public OutputStream getOutputStream() {
+		return this.out;
+	}
+
+	/**
+	 * @return true if (a part of) the response has been written
+	 */
+	public boolean isStarted() {
+		return this.started;
+	}
+
+	/**
+	 * Write a JSON-P object as response.
+	 */
+	public void object(JsonObject data) throws IOException {
+		begin();
+		JsonGenerator gen = JsonCodec.PROVIDER.createGenerator(new NonClosingWriter(this.writer));
+		gen.write(data);
+		gen.flush();
+		end();
+	}
+
+	/**
+	 * Write an object (timer, ruleset, ...) as response with JSON-B.
+	 */
+	public void pojo(Object data) throws IOException {
+		begin();
+		JsonCodec.JSONB.toJson(data, new NonClosingWriter(this.writer));
+		end();
+	}
+
+	/**
+	 * Write <code>{"key": data}</code> as response, with the object written by JSON-B.
+	 */
+	public void pojo(String key, Object data) throws IOException {
+		begin();
+		this.writer.write("{");
+		string(key);
+		this.writer.write(":");
+		JsonCodec.JSONB.toJson(data, new NonClosingWriter(this.writer));
+		this.writer.write("}");
+		end();
+	}
+
+	/**
+	 * Write a text that already is a JSON object as response.
+	 */
+	public void json(String data) throws IOException {
+		begin();
+		this.writer.write(data);
+		end();
+	}
+
+	/**
+	 * Write UTF-8 bytes that already are a JSON object as response.
+	 */
+	public void json(byte[] data) throws IOException {
+		begin();
+		this.writer.flush();
+		this.out.write(data);
+		end();
+	}
+
+	/**
+	 * Write <code>{"key": "text"}</code> as response, with the text read from the (UTF-8) stream in chunks.
+	 */
+	public void text(String key, InputStream in) throws IOException {
+		try (Reader rdr = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+			Appendable text = beginText(key);
+			char[] buf = new char[8192];
+			int n;
+			while ((n = rdr.read(buf)) > 0) {
+				escape(buf, 0, n, this.writer);
+			}
+			endText(text);
+		}
+	}
+
+	/**
+	 * Start a <code>{"key": "text"}</code> response.
+	 *
+	 * @return the appendable that escapes the text that is appended to it
+	 */
+	public Appendable beginText(String key) throws IOException {
+		begin();
+		this.writer.write("{");
+		string(key);
+		this.writer.write(":\"");
+		return new Escaper(this.writer);
+	}
+
+	public void endText(Appendable text) throws IOException {
+		this.writer.write("\"}");
+		end();
+	}
+
+	/**
+	 * Write an empty response if the command did not write one and flush the response.
+	 */
+	public void finish() throws IOException {
+		if (!this.started) {
+			object(JsonObject.EMPTY_JSON_OBJECT);
+		}
+		this.writer.flush();
+	}
+
+	private void begin() throws IOException {
+		if (this.started) {
+			throw new IllegalStateException("Response of command '" + this.command + "' has already been written.");
+		}
+		this.started = true;
+		this.writer.write("{\"msgId\":\"");
+		this.writer.write(this.msgId.toString());
+		this.writer.write("\",\"command\":");
+		string(this.command);
+		this.writer.write(",\"response\":");
+	}
+
+	private void end() throws IOException {
+		this.writer.write("}");
+		this.writer.flush();
+	}
+
+	private void string(String s) throws IOException {
+		this.writer.write('"');
+		escape(s, this.writer);
+		this.writer.write('"');
+	}
+
+	/**
+	 * @return an appendable that escapes the text that is appended to it as JSON string content and writes it to w
+	 */
+	public static Appendable escaper(Writer w) {
+		return new Escaper(w);
+	}
+
+	/**
+	 * Escape the characters as JSON string content.
+	 */
+	static void escape(CharSequence s, Writer w) throws IOException {
+		String str = s.toString();
+		int start = 0;
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if ((c < 0x20) || (c == '"') || (c == '\\')) {
+				w.write(str, start, i - start);
+				escape(c, w);
+				start = i + 1;
+			}
+		}
+		w.write(str, start, str.length() - start);
+	}
+
+	static void escape(char[] buf, int off, int len, Writer w) throws IOException {
+		int start = off;
+		for (int i = off; i < (off + len); i++) {
+			char c = buf[i];
+			if ((c < 0x20) || (c == '"') || (c == '\\')) {
+				w.write(buf, start, i - start);
+				escape(c, w);
+				start = i + 1;
+			}
+		}
+		w.write(buf, start, (off + len) - start);
+	}
+
+	private static void escape(char c, Writer w) throws IOException {
+		switch (c) {
+		case '"':
+			w.write("\\\"");
+			break;
+		case '\\':
+			w.write("\\\\");
+			break;
+		case '\n':
+			w.write("\\n");
+			break;
+		case '\r':
+			w.write("\\r");
+			break;
+		case '\t':
+			w.write("\\t");
+			break;
+		case '\b':
+			w.write("\\b");
+			break;
+		case '\f':
+			w.write("\\f");
+			break;
+		default:
+			if (c < 0x20) {
+				w.write("\\u00");
+				w.write(HEX[c >> 4]);
+				w.write(HEX[c & 0xF]);
+			} else {
+				w.write(c);
+			}
+		}
+	}
+
+	/**
+	 * Appends escaped text.
+	 */
+	private static class Escaper implements Appendable {
+		private final Writer w;
+
+		Escaper(Writer w) {
+			this.w = w;
+		}
+
+		@Override
+		public Appendable append(CharSequence csq) throws IOException {
+			escape(csq, this.w);
+			return this;
+		}
+
+		@Override
+		public Appendable append(CharSequence csq, int start, int end) throws IOException {
+			escape(csq.subSequence(start, end), this.w);
+			return this;
+		}
+
+		@Override
+		public Appendable append(char c) throws IOException {
+			escape(c, this.w);
+			return this;
+		}
+	}
+
+	/**
+	 * JSON-B and the generator close their writer when they are done; the response is not done yet.
+	 */
+	private static class NonClosingWriter extends FilterWriter {
+		NonClosingWriter(Writer w) {
+			super(w);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+}
@@ -19,7 +19,9 @@ import io.undertow.server.handlers.BlockingHandler;
 import io.undertow.server.handlers.accesslog.AccessLogHandler;
 import io.undertow.util.Headers;
 import nl.das.tcu.Util;
+import nl.das.tcu.rest.handlers.ChangesHandler;
 import nl.das.tcu.rest.handlers.DeviceStateHandler;
+import nl.das.tcu.rest.handlers.EventsHandler;
 import nl.das.tcu.rest.handlers.HistoryHandler;
 import nl.das.tcu.rest.handlers.PropertiesHandler;
 import nl.das.tcu.rest.handlers.RulesHandler;
@@ -66,7 +68,10 @@ public class RestServer {
 	        		.post("device/{device}/manual", new BlockingHandler(new DeviceStateHandler()))
 	        		.post("device/{device}/auto", new BlockingHandler(new DeviceStateHandler()))
 	        		.post("counter/{device}/{hoursOn}", new BlockingHandler(new DeviceStateHandler()))
+	        		.get("events", new EventsHandler())
+	        		.get("changes", new ChangesHandler())
 	        		.get("sensors", new BlockingHandler(new SensorsHandler()))
+	        		.get("sensors/recent", new BlockingHandler(new SensorsHandler()))
 	        		.post("sensors/{room}/{terr}", new BlockingHandler(new SensorsHandler()))
 	        		.post("sensors/auto", new BlockingHandler(new SensorsHandler()))
 	        		.get("timers/{device}", new BlockingHandler(new TimersHandler()))
@@ -77,6 +82,7 @@ public class RestServer {
 	        		.post("sprayerrule", new BlockingHandler(new RulesHandler()))
 	        		.get("history/temperature", new BlockingHandler(new HistoryHandler()))
 	        		.get("history/state", new BlockingHandler(new HistoryHandler()))
+	        		.get("history/temperature/rollup", new BlockingHandler(new HistoryHandler()))
 	        		.get("history/temperature/{fname}", new BlockingHandler(new HistoryHandler()))
 	        		.get("history/state/{fname}", new BlockingHandler(new HistoryHandler()))
 	        		.setFallbackHandler(RestServer::notFoundHandler))
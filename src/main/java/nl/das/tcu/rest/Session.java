@@ -0,0 +1,25 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.rest;
+
+import java.util.Set;
+
+/**
+ * The Bluetooth connection a command was received on, for commands that change the connection itself.
+ */
+public interface Session {
+
+	/**
+	 * Push the events of the given types (all types if null) over this connection from now on.
+	 */
+	void subscribe(Set<String> types);
+
+	void unsubscribe();
+}
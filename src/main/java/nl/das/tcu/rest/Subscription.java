@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.json.JsonObject;
+
+import nl.das.tcu.JsonCodec;
+import nl.das.tcu.Util;
+import nl.das.tcu.events.EventBus;
+
+/**
+ * Pushes the events of the terrarium (see {@link EventBus}) over a Bluetooth connection as
+ * <pre>{"event":"device","data":{...}}</pre> followed by an ETX, between the responses to the commands.
+ *
+ * Publishing an event only puts it in the queue of the subscription; the events are written by a thread of the
+ * subscription, so a slow client never holds up the control loop. The queue holds the last event per device,
+ * timer, ruleset, ... (see {@link EventBus#key}), so it stays small however far the client is behind, and the
+ * client always gets the newest value.
+ */
+public class Subscription implements EventBus.Listener, Runnable {
+
+	private final String name;
+	private final OutputStream out;
+	private final Set<String> types;
+	private final Map<String, JsonObject> pending = new LinkedHashMap<>();
+	private boolean closed;
+
+	/**
+	 * @param out the output stream of the connection; it is locked while an event is written
+	 */
+	public Subscription(String name, OutputStream out, Set<String> types) {
+		this.name = name;
+		this.out = out;
+		this.types = types;
+	}
+
+	public void start() {
+		Thread t = new Thread(this, "BTPush-" + this.name);
+		t.setDaemon(true);
+		t.start();
+		EventBus.subscribe(this);
+	}
+
+	public synchronized void close() {
+		EventBus.unsubscribe(this);
+		this.closed = true;
+		notifyAll();
+	}
+
+	public synchronized boolean isClosed() {
+		return this.closed;
+	}
+
+	@Override
+	public void event(String type, JsonObject data) {
+		if ((this.types != null) && !this.types.contains(type)) {
+			return;
+		}
+		JsonObject msg = JsonCodec.PROVIDER.createObjectBuilder().add("event", type).add("data", data).build();
+		String key = EventBus.key(type, data);
+		synchronized (this) {
+			// Keep the order of the last event of each key
+			this.pending.remove(key);
+			this.pending.put(key, msg);
+			notifyAll();
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				List<JsonObject> events;
+				synchronized (this) {
+					while (!this.closed && this.pending.isEmpty()) {
+						wait();
+					}
+					if (this.closed) {
+						return;
+					}
+					events = new ArrayList<>(this.pending.values());
+					this.pending.clear();
+				}
+				synchronized (this.out) {
+					for (JsonObject e : events) {
+						this.out.write(e.toString().getBytes(StandardCharsets.UTF_8));
+						this.out.write(FrameDecoder.ETX);
+					}
+					this.out.flush();
+				}
+			}
+		} catch (IOException e) {
+			Util.println("Bluetooth client " + this.name + ": events could not be sent: " + e.getMessage());
+			close();
+		} catch (InterruptedException e) {
+			close();
+		}
+	}
+}
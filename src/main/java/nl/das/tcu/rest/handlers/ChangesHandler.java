@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.rest.handlers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.SameThreadExecutor;
+import io.undertow.util.StatusCodes;
+import nl.das.tcu.events.ChangeLog;
+
+/**
+ * GET /changes?since=N[&wait=S]
+ *
+ * Returns the changes after sequence number N (see {@link ChangeLog}). When there are none and 'wait' is given,
+ * the response is held back until there is a change or 'wait' seconds (max MAX_WAIT) have passed.
+ * Waiting does not occupy a worker thread.
+ */
+public class ChangesHandler implements HttpHandler {
+
+	public static final int MAX_WAIT = 60;
+
+	@Override
+	public void handleRequest (HttpServerExchange exchange) throws Exception {
+		long since;
+		int wait;
+		try {
+			String prm = HandlerUtils.getParm(exchange.getQueryParameters(), "since");
+			since = prm.isEmpty() ? -1L : Long.parseLong(prm);
+			prm = HandlerUtils.getParm(exchange.getQueryParameters(), "wait");
+			wait = prm.isEmpty() ? 0 : Math.min(Integer.parseInt(prm), MAX_WAIT);
+		} catch (NumberFormatException e) {
+			exchange.setStatusCode(StatusCodes.BAD_REQUEST);
+			exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
+			exchange.getResponseSender().send("Parameters 'since' and 'wait' must be numbers");
+			return;
+		}
+		ChangeLog log = ChangeLog.getInstance();
+		if (wait <= 0) {
+			send(exchange, log, since);
+			return;
+		}
+		exchange.dispatch(SameThreadExecutor.INSTANCE, () -> {
+			AtomicBoolean done = new AtomicBoolean();
+			Runnable respond = () -> {
+				if (done.compareAndSet(false, true)) {
+					exchange.getIoThread().execute(() -> send(exchange, log, since));
+				}
+			};
+			if (!log.await(since, respond)) {
+				respond.run();
+				return;
+			}
+			exchange.getIoThread().executeAfter(() -> {
+				log.cancel(respond);
+				respond.run();
+			}, wait, TimeUnit.SECONDS);
+		});
+	}
+
+	private static void send(HttpServerExchange exchange, ChangeLog log, long since) {
+		exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
+		exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, "no-cache");
+		exchange.getResponseSender().send(log.since(since).toString());
+	}
+}
@@ -9,12 +9,17 @@
 
 package nl.das.tcu.rest.handlers;
 
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
 
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
+import io.undertow.util.ETag;
+import io.undertow.util.ETagUtils;
 import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
 import nl.das.tcu.Util;
+import nl.das.tcu.objects.StateSnapshot;
 import nl.das.tcu.objects.Terrarium;
 
 /**
@@ -27,8 +32,18 @@ public class DeviceStateHandler implements HttpHandler {
 		exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
 		if (exchange.getRequestMethod().toString().equalsIgnoreCase("GET")) {
         	try {
+				StateSnapshot state = Terrarium.getInstance().getStateSnapshot();
+				ETag etag = new ETag(false, state.getETag());
+				exchange.getResponseHeaders().put(Headers.ETAG, etag.toString());
+				exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, "no-cache");
+				if (!ETagUtils.handleIfNoneMatch(exchange, etag, false)) {
+					// Nothing has changed since the client's last request
+					exchange.setStatusCode(StatusCodes.NOT_MODIFIED);
+					exchange.endExchange();
+					return;
+				}
 				exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
-				exchange.getResponseSender().send(Terrarium.getInstance().getState());
+				exchange.getResponseSender().send(ByteBuffer.wrap(state.getBytes()));
 			} catch (Exception e) {
 				exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
 				exchange.getResponseSender().send(e.getMessage());
@@ -0,0 +1,129 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.rest.handlers;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.json.JsonObject;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.sse.ServerSentEventConnection;
+import io.undertow.server.handlers.sse.ServerSentEventConnection.EventCallback;
+import io.undertow.server.handlers.sse.ServerSentEventConnectionCallback;
+import io.undertow.server.handlers.sse.ServerSentEventHandler;
+import io.undertow.util.AttachmentKey;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import nl.das.tcu.Util;
+import nl.das.tcu.events.EventBus;
+import nl.das.tcu.objects.Terrarium;
+
+/**
+ * Server-Sent Events stream of the changes in the terrarium (see {@link EventBus}).
+ *
+ * On connect the client gets the complete state as a "state" event, followed by an event for each change.
+ * The events can be limited with <code>?types=device,sensors</code>.
+ * Sending is done by the IO threads, so publishing an event never waits for a client. A client that does not
+ * keep up (more than MAX_PENDING events not sent yet) is disconnected; EventSource clients will reconnect and
+ * get the complete state again.
+ */
+public class EventsHandler implements HttpHandler, ServerSentEventConnectionCallback, EventBus.Listener {
+
+	public static int MAX_PENDING = 64;
+	public static long KEEP_ALIVE_MILLIS = 30000L;
+
+	private static final AttachmentKey<AtomicInteger> PENDING = AttachmentKey.create(AtomicInteger.class);
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static final AttachmentKey<Set<String>> TYPES = AttachmentKey.create(Set.class);
+	private static final AttachmentKey<String> PEER = AttachmentKey.create(String.class);
+	// The connection has no access to the exchange, so the peer address is passed in a request header
+	private static final HttpString PEER_HEADER = new HttpString("X-TCU-Peer");
+
+	private final ServerSentEventHandler sse = new ServerSentEventHandler(this);
+	private int clients = 0;
+	private final EventCallback sent = new EventCallback() {
+		@Override
+		public void done(ServerSentEventConnection connection, String data, String event, String id) {
+			connection.getAttachment(PENDING).decrementAndGet();
+		}
+
+		@Override
+		public void failed(ServerSentEventConnection connection, String data, String event, String id, IOException e) {
+			connection.getAttachment(PENDING).decrementAndGet();
+		}
+	};
+
+	@Override
+	public void handleRequest(HttpServerExchange exchange) throws Exception {
+		exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, "no-cache");
+		// Always overwritten, so it cannot be set by the client
+		exchange.getRequestHeaders().put(PEER_HEADER, String.valueOf(exchange.getSourceAddress()));
+		this.sse.handleRequest(exchange);
+	}
+
+	@Override
+	public void connected(ServerSentEventConnection connection, String lastEventId) {
+		connection.putAttachment(PEER, connection.getRequestHeaders().getFirst(PEER_HEADER));
+		connection.putAttachment(PENDING, new AtomicInteger());
+		String types = HandlerUtils.getParm(connection.getQueryParameters(), "types");
+		if (!types.isBlank()) {
+			connection.putAttachment(TYPES, new HashSet<>(Arrays.asList(types.split(","))));
+		}
+		connection.setKeepAliveTime(KEEP_ALIVE_MILLIS);
+		// Only listen when there are clients, so no events are built for nobody
+		synchronized (this) {
+			if (this.clients++ == 0) {
+				EventBus.subscribe(this);
+			}
+		}
+		connection.addCloseTask(c -> {
+			synchronized (this) {
+				if (--this.clients == 0) {
+					EventBus.unsubscribe(this);
+				}
+			}
+		});
+		send(connection, "state", Terrarium.getInstance().getStateSnapshot().getText());
+	}
+
+	@Override
+	public void event(String type, JsonObject data) {
+		String text = null;
+		for (ServerSentEventConnection c : this.sse.getConnections()) {
+			Set<String> types = c.getAttachment(TYPES);
+			if ((types == null) || types.contains(type)) {
+				if (text == null) {
+					// Serialized once for all clients
+					text = data.toString();
+				}
+				send(c, type, text);
+			}
+		}
+	}
+
+	private void send(ServerSentEventConnection connection, String type, String text) {
+		AtomicInteger pending = connection.getAttachment(PENDING);
+		if (pending == null) {
+			// Not completely connected yet; it gets the complete state then
+			return;
+		}
+		if (pending.incrementAndGet() > MAX_PENDING) {
+			Util.println("Event stream client " + connection.getAttachment(PEER) + " is too slow and is disconnected");
+			connection.shutdown();
+			return;
+		}
+		connection.send(text, type, null, this.sent);
+	}
+}
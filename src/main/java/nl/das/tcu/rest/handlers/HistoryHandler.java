@@ -9,10 +9,19 @@
 
 package nl.das.tcu.rest.handlers;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import javax.json.Json;
@@ -21,18 +30,42 @@ import javax.json.JsonReader;
 import javax.json.bind.Jsonb;
 import javax.json.bind.JsonbBuilder;
 import javax.json.bind.JsonbConfig;
+import javax.json.stream.JsonGenerator;
 
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.resource.PathResourceManager;
+import io.undertow.server.handlers.resource.PreCompressedResourceSupplier;
+import io.undertow.server.handlers.resource.ResourceHandler;
+import io.undertow.server.handlers.resource.ResourceManager;
+import io.undertow.util.ByteRange;
+import io.undertow.util.DateUtils;
+import io.undertow.util.ETag;
+import io.undertow.util.ETagUtils;
 import io.undertow.util.Headers;
+import io.undertow.util.Methods;
+import io.undertow.util.StatusCodes;
 import nl.das.tcu.Util;
 import nl.das.tcu.objects.Terrarium;
+import nl.das.tcu.rest.ResponseWriter;
+import nl.das.tcu.trace.TemperatureRollup;
+import nl.das.tcu.trace.TemperatureRollup.Resolution;
+import nl.das.tcu.trace.TraceCompactor;
+import nl.das.tcu.trace.TraceFiles;
+import nl.das.tcu.trace.TraceReader;
 
 /**
+ * Lists the trace files and returns their content.
  *
+ * The content of a trace file is returned as JSON, or with <code>?format=raw</code>
+ * (or <code>Accept: text/plain</code>) as the plain file itself. The raw file is sent straight from disk
+ * and supports <code>Range</code> requests and conditional requests (<code>ETag</code>, <code>Last-Modified</code>).
  */
 public class HistoryHandler implements HttpHandler {
 
+	private static ResourceHandler rawHandler;
+	private static String rawFolder;
+
 	@Override
 	public void handleRequest (HttpServerExchange exchange) throws Exception {
 		Jsonb jsonb = JsonbBuilder.create(new JsonbConfig().withFormatting(true));
@@ -40,7 +73,41 @@ public class HistoryHandler implements HttpHandler {
         	try {
         		String path = exchange.getRelativePath();
     			List<String> files = new ArrayList<>();
-        		if (path.equalsIgnoreCase("/history/temperature")) {
+        		String from = HandlerUtils.getParm(exchange.getQueryParameters(), "from");
+        		String to = HandlerUtils.getParm(exchange.getQueryParameters(), "to");
+        		if (path.equalsIgnoreCase("/history/temperature/rollup")) {
+        			String prm = HandlerUtils.getParm(exchange.getQueryParameters(), "res");
+        			Resolution res;
+        			try {
+        				res = Resolution.of(prm.isEmpty() ? "1h" : prm);
+        			} catch (IllegalArgumentException e) {
+        				exchange.setStatusCode(StatusCodes.BAD_REQUEST);
+        				exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
+        				exchange.getResponseSender().send(e.getMessage());
+        				return;
+        			}
+        			LocalDateTime tm = to.length() > 0 ? TraceReader.parseTime(to) : LocalDateTime.now();
+        			LocalDateTime fm = from.length() > 0 ? TraceReader.parseTime(from) : tm.minusDays(1);
+        			JsonObject object = Json.createObjectBuilder()
+        					.add("res", res.getName())
+        					.add("rollup", TemperatureRollup.toJson(TemperatureRollup.of(Terrarium.traceFolder).query(res, fm, tm)))
+        					.build();
+       				exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
+    				exchange.getResponseSender().send(object.toString());
+        		} else if ((from.length() > 0) || (to.length() > 0)) {
+        			// Only the lines of the requested time window
+        			String prefix = path.equalsIgnoreCase("/history/temperature") ? "temp_" : "state_";
+        			LocalDateTime tm = to.length() > 0 ? TraceReader.parseTime(to) : LocalDateTime.now();
+        			LocalDateTime fm = from.length() > 0 ? TraceReader.parseTime(from) : tm.minusDays(1);
+       				exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
+        			exchange.startBlocking();
+        			// Written while the lines are read, so a window of several days is never held in memory
+        			Writer w = new OutputStreamWriter(exchange.getOutputStream(), StandardCharsets.UTF_8);
+        			w.write("{\"content\":\"");
+        			TraceReader.copyRange(Terrarium.traceFolder, prefix, fm, tm, ResponseWriter.escaper(w));
+        			w.write("\"}");
+        			w.flush();
+        		} else if (path.equalsIgnoreCase("/history/temperature")) {
        				files = Util.listTraceFiles(Terrarium.traceFolder, "temp_");
     				JsonReader jsonReader = Json.createReader(new StringReader("{\"files\":" + jsonb.toJson(files) + "}"));
     				JsonObject object = jsonReader.readObject();
@@ -52,20 +119,18 @@ public class HistoryHandler implements HttpHandler {
     				JsonObject object = jsonReader.readObject();
        				exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
     				exchange.getResponseSender().send(Util.parser().toJson(object));
-        		} else if (path.startsWith("/history/temperature/")) {
+        		} else if (path.startsWith("/history/temperature/") || path.startsWith("/history/state/")) {
         			String fname = HandlerUtils.getParm(exchange.getQueryParameters(), "fname");
-        			String content = Files.readString(Paths.get(Terrarium.traceFolder + "/" + fname));
-    				JsonReader jsonReader = Json.createReader(new StringReader("{\"content\":\"" + content.replace("\n", "\\n") + "\"}"));
-    				JsonObject object = jsonReader.readObject();
-        			exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
-    				exchange.getResponseSender().send(Util.parser().toJson(object));
-        		} else if (path.startsWith("/history/state/")) {
-        			String fname = HandlerUtils.getParm(exchange.getQueryParameters(), "fname");
-        			String content = Files.readString(Paths.get(Terrarium.traceFolder + "/" + fname));
-    				JsonReader jsonReader = Json.createReader(new StringReader("{\"content\":\"" + content.replace("\n", "\\n") + "\"}"));
-    				JsonObject object = jsonReader.readObject();
-        			exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
-    				exchange.getResponseSender().send(Util.parser().toJson(object));
+        			if (isRaw(exchange)) {
+        				sendRaw(exchange, fname);
+        			} else {
+        				Path tracefile = Paths.get(Terrarium.traceFolder, fname);
+        				exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
+        				exchange.startBlocking();
+        				try (JsonGenerator gen = Json.createGenerator(exchange.getOutputStream())) {
+        					gen.writeStartObject().write("content", TraceFiles.readString(tracefile)).writeEnd();
+        				}
+        			}
         		}
 			} catch (Exception e) {
 				exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
@@ -74,4 +139,115 @@ public class HistoryHandler implements HttpHandler {
 		}
 	}
 
+	private static boolean isRaw(HttpServerExchange exchange) {
+		String format = HandlerUtils.getParm(exchange.getQueryParameters(), "format");
+		if (format.length() > 0) {
+			return format.equalsIgnoreCase("raw");
+		}
+		String accept = exchange.getRequestHeaders().getFirst(Headers.ACCEPT);
+		return (accept != null) && accept.startsWith("text/plain");
+	}
+
+	/**
+	 * Send the trace file as it is. Trace files that have been rolled over never change,
+	 * so the client may cache them; the current one must be revalidated.
+	 * A compressed trace file is sent as it is stored (<code>Content-Encoding: gzip</code>)
+	 * when the client accepts gzip and asks for the whole file, otherwise it is decompressed while it is sent.
+	 */
+	private static void sendRaw(HttpServerExchange exchange, String fname) throws Exception {
+		String prefix = fname.startsWith("temp_") ? "temp_" : "state_";
+		List<String> files = Util.listTraceFiles(Terrarium.traceFolder, prefix);
+		boolean current = files.isEmpty() || files.get(files.size() - 1).equals(fname);
+		exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain; charset=UTF-8");
+		exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, current ? "no-cache" : "max-age=86400");
+		exchange.getResponseHeaders().put(Headers.VARY, Headers.ACCEPT_ENCODING_STRING);
+		Path tracefile = Paths.get(Terrarium.traceFolder, fname);
+		Path gz = TraceCompactor.compressed(tracefile);
+		String encoding = exchange.getRequestHeaders().getFirst(Headers.ACCEPT_ENCODING);
+		boolean gzip = (encoding != null) && encoding.contains("gzip");
+		// The pre-compressed file cannot be used for a Range request, the range is in the uncompressed content
+		if ((fname.indexOf('/') < 0) && !Files.exists(tracefile) && Files.exists(gz)
+				&& (!gzip || exchange.getRequestHeaders().contains(Headers.RANGE))) {
+			sendDecompressed(exchange, tracefile, gz);
+			return;
+		}
+		exchange.setRelativePath("/" + fname);
+		rawHandler().handleRequest(exchange);
+	}
+
+	/**
+	 * Send (a range of) the decompressed content of a compressed trace file, with the ETag and Last-Modified of the
+	 * compressed file.
+	 */
+	private static void sendDecompressed(HttpServerExchange exchange, Path tracefile, Path gz) throws IOException {
+		ETag etag = etag(gz);
+		Date modified = new Date(Files.getLastModifiedTime(gz).toMillis());
+		exchange.getResponseHeaders().put(Headers.ETAG, etag.toString());
+		exchange.getResponseHeaders().put(Headers.LAST_MODIFIED, DateUtils.toDateString(modified));
+		exchange.getResponseHeaders().put(Headers.ACCEPT_RANGES, "bytes");
+		if (!ETagUtils.handleIfNoneMatch(exchange, etag, true) || !DateUtils.handleIfModifiedSince(exchange, modified)) {
+			exchange.setStatusCode(StatusCodes.NOT_MODIFIED);
+			exchange.endExchange();
+			return;
+		}
+		long size = TraceFiles.size(tracefile);
+		long start = 0;
+		long length = size;
+		ByteRange range = ByteRange.parse(exchange.getRequestHeaders().getFirst(Headers.RANGE));
+		if ((range != null) && (range.getRanges() == 1)) {
+			ByteRange.RangeResponseResult rr = range.getResponseResult(size, exchange.getRequestHeaders().getFirst(Headers.IF_RANGE), modified, etag.getTag());
+			if (rr != null) {
+				exchange.setStatusCode(rr.getStatusCode());
+				exchange.getResponseHeaders().put(Headers.CONTENT_RANGE, rr.getContentRange());
+				if (rr.getStatusCode() == StatusCodes.REQUEST_RANGE_NOT_SATISFIABLE) {
+					exchange.endExchange();
+					return;
+				}
+				start = rr.getStart();
+				length = rr.getContentLength();
+			}
+		}
+		exchange.setResponseContentLength(length);
+		if (exchange.getRequestMethod().equals(Methods.HEAD)) {
+			exchange.endExchange();
+			return;
+		}
+		exchange.startBlocking();
+		try (InputStream in = TraceFiles.newInputStream(tracefile, start)) {
+			OutputStream out = exchange.getOutputStream();
+			byte[] buf = new byte[8192];
+			long todo = length;
+			int n;
+			while ((todo > 0) && ((n = in.read(buf, 0, (int) Math.min(buf.length, todo))) > 0)) {
+				out.write(buf, 0, n);
+				todo -= n;
+			}
+		}
+	}
+
+	/**
+	 * A file changes while it is being traced, so the ETag contains its size and modification time.
+	 */
+	private static ETag etag(Path p) throws IOException {
+		return new ETag(false, Long.toHexString(Files.size(p)) + "-" + Long.toHexString(Files.getLastModifiedTime(p).toMillis()));
+	}
+
+	private static synchronized ResourceHandler rawHandler() {
+		if ((rawHandler == null) || !Terrarium.traceFolder.equals(rawFolder)) {
+			ResourceManager rm = PathResourceManager.builder()
+					.setBase(Paths.get(Terrarium.traceFolder))
+					.setETagFunction(p -> {
+						try {
+							return etag(p);
+						} catch (IOException e) {
+							return null;
+						}
+					})
+					.build();
+			rawHandler = new ResourceHandler(new PreCompressedResourceSupplier(rm).addEncoding("gzip", TraceCompactor.EXT))
+					.setDirectoryListingEnabled(false);
+			rawFolder = Terrarium.traceFolder;
+		}
+		return rawHandler;
+	}
 }
@@ -45,11 +45,9 @@ public class RulesHandler implements HttpHandler {
             		String json = new String(exchange.getInputStream().readAllBytes());
         			int nr = Integer.parseInt(HandlerUtils.getParm(exchange.getQueryParameters(), "nr"));
         			Terrarium.getInstance().replaceRuleset(nr, Util.parser().fromJson(json, Ruleset.class));
-        			Terrarium.getInstance().saveSettings();
         		} else if (path.equalsIgnoreCase("/sprayerrule")) {
             		String json = new String(exchange.getInputStream().readAllBytes());
 	        		Terrarium.getInstance().setSprayerRule(Util.parser().fromJson(json, SprayerRule.class));
-	        		Terrarium.getInstance().saveSettings();
         		}
 				exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
 				exchange.getResponseSender().send("{}");
@@ -13,6 +13,7 @@ import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.Headers;
 import nl.das.tcu.Util;
+import nl.das.tcu.objects.SensorHistory;
 import nl.das.tcu.objects.Terrarium;
 
 /**
@@ -26,7 +27,13 @@ public class SensorsHandler implements HttpHandler {
 		if (exchange.getRequestMethod().toString().equalsIgnoreCase("GET")) {
         	try {
 				exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
-				exchange.getResponseSender().send(Util.parser().toJson(Terrarium.getInstance().getSensors()));
+				if (exchange.getRelativePath().equalsIgnoreCase("/sensors/recent")) {
+					String minutes = HandlerUtils.getParm(exchange.getQueryParameters(), "minutes");
+					int n = minutes.length() > 0 ? Integer.parseInt(minutes) : 60;
+					exchange.getResponseSender().send(SensorHistory.getInstance().getRecent(n).toString());
+				} else {
+					exchange.getResponseSender().send(Util.parser().toJson(Terrarium.getInstance().getSensors()));
+				}
 			} catch (Exception e) {
 				exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/plain");
 				exchange.getResponseSender().send(e.getMessage());
@@ -0,0 +1,239 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.store;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.json.bind.JsonbConfig;
+
+import nl.das.tcu.Util;
+import nl.das.tcu.objects.Ruleset;
+import nl.das.tcu.objects.SprayerRule;
+import nl.das.tcu.objects.Terrarium;
+import nl.das.tcu.objects.Timer;
+
+/**
+ * Keeps settings.json up to date without rewriting it on every change.
+ *
+ * Each change (replaced timers, a replaced ruleset or the sprayer rule) is appended to a journal as a small
+ * JSON record with its length and CRC32, and forced to disk before the command returns.
+ * When no change has been made for <code>debounceMillis</code> milliseconds, settings.json is rewritten in the background
+ * via a temporary file and an atomic rename, and the journal is emptied. A burst of changes therefore
+ * results in one rewrite. On startup the journal is replayed on top of settings.json.
+ * During a batch of commands (see {@link #beginBatch()}) nothing is journaled; settings.json is rewritten once
+ * when the batch ends.
+ */
+public class ConfigStore {
+
+	public static long debounceMillis = 5000L;
+
+	private static final Jsonb compact = JsonbBuilder.create();
+	private static final Jsonb pretty = JsonbBuilder.create(new JsonbConfig().withFormatting(true).withNullValues(true));
+	private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "ConfigStore");
+		t.setDaemon(true);
+		t.setPriority(Thread.MIN_PRIORITY);
+		return t;
+	});
+
+	private final Path settingsPath;
+	private final Path journalPath;
+	private final CRC32 crc = new CRC32();
+	private FileChannel channel;
+	private ScheduledFuture<?> pending;
+	private int batches;
+	private boolean batchChanged;
+
+	public ConfigStore(Path settingsPath, Path journalPath) {
+		this.settingsPath = settingsPath;
+		this.journalPath = journalPath;
+	}
+
+	/**
+	 * Write the settings to the given file in one atomic step.
+	 */
+	public static void write(Path settingsPath) throws IOException {
+		Path tmp = settingsPath.resolveSibling(settingsPath.getFileName() + ".tmp");
+		try (FileChannel fc = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer bb = ByteBuffer.wrap(pretty.toJson(Terrarium.cfg).getBytes(StandardCharsets.UTF_8));
+			while (bb.hasRemaining()) {
+				fc.write(bb);
+			}
+			fc.force(true);
+		}
+		Files.move(tmp, settingsPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Apply the changes in the journal that are not in settings.json yet.
+	 * Replaying stops at the first incomplete or corrupt record.
+	 *
+	 * @return the number of changes that have been applied
+	 */
+	public int replay(Terrarium terrarium) throws IOException {
+		byte[] data;
+		try {
+			data = Files.readAllBytes(this.journalPath);
+		} catch (NoSuchFileException e) {
+			return 0;
+		}
+		ByteBuffer bb = ByteBuffer.wrap(data);
+		CRC32 c = new CRC32();
+		int n = 0;
+		while (bb.remaining() >= 8) {
+			int len = bb.getInt();
+			int sum = bb.getInt();
+			if ((len < 0) || (len > bb.remaining())) {
+				break;
+			}
+			c.reset();
+			c.update(data, bb.position(), len);
+			if (sum != (int) c.getValue()) {
+				break;
+			}
+			String json = new String(data, bb.position(), len, StandardCharsets.UTF_8);
+			bb.position(bb.position() + len);
+			JsonObject rec = Json.createReader(new StringReader(json)).readObject();
+			String data1 = rec.get("data").toString();
+			switch (rec.getString("op")) {
+			case "timers":
+				terrarium.replaceTimers(compact.fromJson(data1, Timer[].class));
+				break;
+			case "ruleset":
+				terrarium.replaceRuleset(rec.getInt("nr"), compact.fromJson(data1, Ruleset.class));
+				break;
+			case "sprayerrule":
+				terrarium.setSprayerRule(compact.fromJson(data1, SprayerRule.class));
+				break;
+			default:
+				Util.println("Unknown settings change '" + rec.getString("op") + "'");
+			}
+			n++;
+		}
+		if (bb.hasRemaining()) {
+			Util.println("Settings journal is corrupt after " + n + " changes");
+		}
+		return n;
+	}
+
+	public void timersReplaced(Timer[] timers) {
+		append("{\"op\":\"timers\",\"data\":" + compact.toJson(timers) + "}");
+	}
+
+	public void rulesetReplaced(int nr, Ruleset ruleset) {
+		append("{\"op\":\"ruleset\",\"nr\":" + nr + ",\"data\":" + compact.toJson(ruleset) + "}");
+	}
+
+	public void sprayerRuleReplaced(SprayerRule sprayerRule) {
+		append("{\"op\":\"sprayerrule\",\"data\":" + compact.toJson(sprayerRule) + "}");
+	}
+
+	/**
+	 * Rewrite settings.json now and empty the journal.
+	 * Must be called with the changes already applied to the settings.
+	 */
+	public synchronized void snapshot() throws IOException {
+		if (this.pending != null) {
+			this.pending.cancel(false);
+			this.pending = null;
+		}
+		write(this.settingsPath);
+		// The changes in the journal are part of settings.json now
+		close();
+		this.channel = FileChannel.open(this.journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	/**
+	 * Do not journal the following changes, but save them all when the batch ends.
+	 */
+	public synchronized void beginBatch() {
+		this.batches++;
+	}
+
+	/**
+	 * Rewrite settings.json if a change has been made since the first batch began and no other batch is running.
+	 */
+	public synchronized void endBatch() {
+		if (this.batches > 0) {
+			this.batches--;
+		}
+		if ((this.batches == 0) && this.batchChanged) {
+			this.batchChanged = false;
+			snapshotQuietly();
+		}
+	}
+
+	public synchronized void close() {
+		if (this.channel != null) {
+			try {
+				this.channel.close();
+			} catch (IOException e) {
+			}
+			this.channel = null;
+		}
+	}
+
+	private synchronized void append(String json) {
+		if (this.batches > 0) {
+			this.batchChanged = true;
+			return;
+		}
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		try {
+			if (this.channel == null) {
+				this.channel = FileChannel.open(this.journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			}
+			this.crc.reset();
+			this.crc.update(bytes);
+			ByteBuffer bb = ByteBuffer.allocate(8 + bytes.length);
+			bb.putInt(bytes.length).putInt((int) this.crc.getValue()).put(bytes).flip();
+			while (bb.hasRemaining()) {
+				this.channel.write(bb);
+			}
+			this.channel.force(false);
+		} catch (IOException e) {
+			Util.println("Settings journal could not be written: " + e.getMessage());
+			close();
+			snapshotQuietly();
+			return;
+		}
+		// Coalesce a burst of changes into one rewrite
+		if (this.pending != null) {
+			this.pending.cancel(false);
+		}
+		this.pending = writer.schedule(this::snapshotQuietly, debounceMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void snapshotQuietly() {
+		try {
+			snapshot();
+		} catch (IOException e) {
+			Util.println("Settings could not be saved: " + e.getMessage());
+		}
+	}
+}
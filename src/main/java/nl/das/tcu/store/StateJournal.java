@@ -0,0 +1,355 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.store;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import nl.das.tcu.Util;
+
+/**
+ * Append-only journal of the device state transitions, so the exact state can be restored after a restart.
+ *
+ * Each transition is a record of 14 bytes: type, device index, value and a CRC32 of the first 10 bytes.
+ * A record holds the new value (not a difference), so replaying a record twice does no harm.
+ * When the journal contains <code>maxRecords</code> records, the complete state is written to the snapshot file
+ * (via a temporary file and an atomic rename) and the journal is emptied. This is done in the background: the
+ * records written in the meantime are still appended to the old journal and kept in memory, and the new journal
+ * starts with them. Until the new journal replaces the old one the old journal is replayed on top of the new
+ * snapshot, which gives the same state because each record holds a new value.
+ *
+ * On startup the snapshot is read and the journal is replayed on top of it. Replaying stops at the first
+ * incomplete or corrupt record, which can only be the last one written before a power failure.
+ *
+ * A record is appended while the caller (holding the Terrarium lock) waits, but it is forced to the SD card in the
+ * background, at most <code>forceMillis</code> milliseconds later, together with the records written in the
+ * meantime. So a device switch never waits for an fsync; a power failure loses at most the last
+ * <code>forceMillis</code> milliseconds of transitions.
+ */
+public class StateJournal {
+
+	public static final byte ON_PERIOD = 1;
+	public static final byte MANUAL = 2;
+	public static final byte RULE_ACTIVE = 3;
+	public static final byte SPRAYER_RULE_ACTIVE = 4;
+	public static final byte SPRAYER_RULE_DELAY = 5;
+
+	static final int RECORD_SIZE = 14;
+	private static final int SNAPSHOT_MAGIC = 0x54435553; // "TCUS"
+
+	public static int maxRecords = 1000;
+	public static long forceMillis = 200L;
+
+	private static final ScheduledExecutorService forcer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "StateJournal");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final Path journalPath;
+	private final Path snapshotPath;
+	private final State state;
+	private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+	private final CRC32 crc = new CRC32();
+	private FileChannel channel;
+	private int records;
+	private boolean forcePending;
+	/** The records written while a snapshot is written in the background, null if no snapshot is being written */
+	private ByteArrayOutputStream since;
+
+	/**
+	 * The device state that is journaled.
+	 */
+	public static class State {
+		public final long[] onPeriod;
+		public final boolean[] manual;
+		public final int[] ruleActive;
+		public boolean sprayerRuleActive;
+		public long sprayerRuleDelayEndtime;
+
+		public State(int nrOfDevices) {
+			this.onPeriod = new long[nrOfDevices];
+			this.manual = new boolean[nrOfDevices];
+			this.ruleActive = new int[nrOfDevices];
+		}
+
+		/**
+		 * @return false if the value is the same as the current one
+		 */
+		boolean apply(byte type, int device, long value) {
+			long old;
+			switch (type) {
+			case ON_PERIOD:
+				old = this.onPeriod[device];
+				this.onPeriod[device] = value;
+				break;
+			case MANUAL:
+				old = this.manual[device] ? 1 : 0;
+				this.manual[device] = value != 0;
+				break;
+			case RULE_ACTIVE:
+				old = this.ruleActive[device];
+				this.ruleActive[device] = (int) value;
+				break;
+			case SPRAYER_RULE_ACTIVE:
+				old = this.sprayerRuleActive ? 1 : 0;
+				this.sprayerRuleActive = value != 0;
+				break;
+			case SPRAYER_RULE_DELAY:
+				old = this.sprayerRuleDelayEndtime;
+				this.sprayerRuleDelayEndtime = value;
+				break;
+			default:
+				return false;
+			}
+			return old != value;
+		}
+	}
+
+	/**
+	 * Start a new journal for the given state. The state is written as snapshot first.
+	 */
+	public StateJournal(Path journal, Path snapshot, State current) throws IOException {
+		this.journalPath = journal;
+		this.snapshotPath = snapshot;
+		this.state = current;
+		snapshot();
+	}
+
+	/**
+	 * Read the snapshot and replay the journal.
+	 *
+	 * @return the state before the restart or null if there is none (or it is for another number of devices)
+	 */
+	public static State load(Path journal, Path snapshot, int nrOfDevices) throws IOException {
+		State s = readSnapshot(snapshot, nrOfDevices);
+		if (s == null) {
+			return null;
+		}
+		byte[] data;
+		try {
+			data = Files.readAllBytes(journal);
+		} catch (NoSuchFileException e) {
+			return s;
+		}
+		ByteBuffer bb = ByteBuffer.wrap(data);
+		CRC32 crc = new CRC32();
+		while (bb.remaining() >= RECORD_SIZE) {
+			int pos = bb.position();
+			byte type = bb.get();
+			int device = bb.get();
+			long value = bb.getLong();
+			crc.reset();
+			crc.update(data, pos, RECORD_SIZE - 4);
+			if (bb.getInt() != (int) crc.getValue()) {
+				Util.println("State journal is corrupt after " + (pos / RECORD_SIZE) + " records");
+				break;
+			}
+			if ((device >= 0) && (device < nrOfDevices)) {
+				s.apply(type, device, value);
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Write a transition to the journal if it changes the state.
+	 */
+	public synchronized void record(byte type, int device, long value) {
+		if ((device < 0) || (device >= this.state.onPeriod.length) || !this.state.apply(type, device, value)) {
+			return;
+		}
+		try {
+			this.record.clear();
+			this.record.put(type).put((byte) device).putLong(value);
+			this.crc.reset();
+			this.crc.update(this.record.array(), 0, RECORD_SIZE - 4);
+			this.record.putInt((int) this.crc.getValue());
+			this.record.flip();
+			while (this.record.hasRemaining()) {
+				this.channel.write(this.record);
+			}
+			if (this.since != null) {
+				this.since.write(this.record.array(), 0, RECORD_SIZE);
+			}
+			this.records++;
+			if ((this.records >= maxRecords) && (this.since == null)) {
+				this.since = new ByteArrayOutputStream(RECORD_SIZE * 16);
+				byte[] snapshot = encode();
+				forcer.execute(() -> rollover(snapshot));
+			}
+			scheduleForce();
+		} catch (IOException e) {
+			Util.println("State journal could not be written: " + e.getMessage());
+		}
+	}
+
+	private void scheduleForce() {
+		if (!this.forcePending) {
+			this.forcePending = true;
+			forcer.schedule(this::force, forceMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Write the complete state to the snapshot file and empty the journal.
+	 */
+	public synchronized void snapshot() throws IOException {
+		writeSnapshot(encode());
+		// The records in the journal are part of the snapshot now
+		closeChannel();
+		this.channel = FileChannel.open(this.journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.records = 0;
+	}
+
+	/**
+	 * Write the snapshot without holding the journal lock, then replace the journal by one with the records that
+	 * have been written since the snapshot was taken.
+	 */
+	private void rollover(byte[] snapshot) {
+		try {
+			writeSnapshot(snapshot);
+			synchronized (this) {
+				if (this.channel != null) {
+					Path tmp = this.journalPath.resolveSibling(this.journalPath.getFileName() + ".tmp");
+					FileChannel fc = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+					ByteBuffer bb = ByteBuffer.wrap(this.since.toByteArray());
+					while (bb.hasRemaining()) {
+						fc.write(bb);
+					}
+					Files.move(tmp, this.journalPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+					// The records of the old journal are in the snapshot, which has been forced already
+					this.channel.close();
+					this.channel = fc;
+					this.records = this.since.size() / RECORD_SIZE;
+					scheduleForce();
+				}
+			}
+		} catch (IOException e) {
+			Util.println("State snapshot could not be written: " + e.getMessage());
+		} finally {
+			synchronized (this) {
+				this.since = null;
+			}
+		}
+	}
+
+	private byte[] encode() {
+		int n = this.state.onPeriod.length;
+		ByteBuffer bb = ByteBuffer.allocate(8 + (n * 13) + 9 + 4);
+		bb.putInt(SNAPSHOT_MAGIC).putInt(n);
+		for (int i = 0; i < n; i++) {
+			bb.putLong(this.state.onPeriod[i]).put((byte) (this.state.manual[i] ? 1 : 0)).putInt(this.state.ruleActive[i]);
+		}
+		bb.put((byte) (this.state.sprayerRuleActive ? 1 : 0)).putLong(this.state.sprayerRuleDelayEndtime);
+		CRC32 c = new CRC32();
+		c.update(bb.array(), 0, bb.position());
+		bb.putInt((int) c.getValue());
+		return bb.array();
+	}
+
+	private void writeSnapshot(byte[] snapshot) throws IOException {
+		ByteBuffer bb = ByteBuffer.wrap(snapshot);
+		Path tmp = this.snapshotPath.resolveSibling(this.snapshotPath.getFileName() + ".tmp");
+		try (FileChannel fc = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			while (bb.hasRemaining()) {
+				fc.write(bb);
+			}
+			fc.force(true);
+		}
+		Files.move(tmp, this.snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Force the records that have been written to disk; the journal is not locked meanwhile.
+	 */
+	public void force() {
+		FileChannel fc;
+		synchronized (this) {
+			this.forcePending = false;
+			fc = this.channel;
+		}
+		if (fc != null) {
+			try {
+				fc.force(false);
+			} catch (ClosedChannelException e) {
+				// Emptied by a snapshot, the records are in the snapshot
+			} catch (IOException e) {
+				Util.println("State journal could not be written: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Wait until a snapshot that is being written in the background is done, then force and close the journal.
+	 */
+	public void close() {
+		try {
+			forcer.submit(() -> { }).get();
+		} catch (ExecutionException e) {
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		closeChannel();
+	}
+
+	private synchronized void closeChannel() {
+		if (this.channel != null) {
+			try {
+				this.channel.force(false);
+				this.channel.close();
+			} catch (IOException e) {
+			}
+			this.channel = null;
+		}
+	}
+
+	private static State readSnapshot(Path snapshot, int nrOfDevices) throws IOException {
+		byte[] data;
+		try {
+			data = Files.readAllBytes(snapshot);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+		ByteBuffer bb = ByteBuffer.wrap(data);
+		if ((data.length < 12) || (bb.getInt() != SNAPSHOT_MAGIC) || (bb.getInt() != nrOfDevices)
+				|| (data.length != (8 + (nrOfDevices * 13) + 9 + 4))) {
+			return null;
+		}
+		CRC32 c = new CRC32();
+		c.update(data, 0, data.length - 4);
+		if (bb.getInt(data.length - 4) != (int) c.getValue()) {
+			Util.println("State snapshot is corrupt");
+			return null;
+		}
+		State s = new State(nrOfDevices);
+		for (int i = 0; i < nrOfDevices; i++) {
+			s.onPeriod[i] = bb.getLong();
+			s.manual[i] = bb.get() != 0;
+			s.ruleActive[i] = bb.getInt();
+		}
+		s.sprayerRuleActive = bb.get() != 0;
+		s.sprayerRuleDelayEndtime = bb.getLong();
+		return s;
+	}
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.trace;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+
+import nl.das.tcu.Util;
+
+/**
+ * Min/max/average of the room and terrarium temperature per 5 minutes, per hour and per day.
+ *
+ * Each sample updates the current bucket of every resolution, so a query never has to read the trace files.
+ * The buckets are stored next to the trace files in <code>rollup_5m.dat</code>, <code>rollup_1h.dat</code>
+ * and <code>rollup_1d.dat</code> as fixed size records sorted by time. The last record is the current bucket
+ * and is rewritten in place until the next bucket starts. When a file holds twice the number of buckets
+ * that is kept, the oldest half is removed.
+ */
+public class TemperatureRollup {
+
+	public enum Resolution {
+		M5("5m", 5, 14 * 288),
+		H1("1h", 60, 400 * 24),
+		D1("1d", 1440, 10 * 366);
+
+		private final String name;
+		private final int minutes;
+		private final int keep;
+
+		Resolution(String name, int minutes, int keep) {
+			this.name = name;
+			this.minutes = minutes;
+			this.keep = keep;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		public static Resolution of(String name) {
+			for (Resolution r : values()) {
+				if (r.name.equalsIgnoreCase(name)) {
+					return r;
+				}
+			}
+			throw new IllegalArgumentException("Resolution '" + name + "' is not one of 5m, 1h or 1d");
+		}
+	}
+
+	static final int RECORD_SIZE = 24;
+
+	private static DateTimeFormatter dtfmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+	private static final Map<String, TemperatureRollup> folders = new HashMap<>();
+
+	private final Path dir;
+	private final Level[] levels = new Level[Resolution.values().length];
+
+	private TemperatureRollup(Path dir) {
+		this.dir = dir;
+		for (Resolution r : Resolution.values()) {
+			this.levels[r.ordinal()] = new Level(r);
+		}
+	}
+
+	public static synchronized TemperatureRollup of(String folder) {
+		TemperatureRollup tr = folders.get(folder);
+		if (tr == null) {
+			tr = new TemperatureRollup(Paths.get(folder));
+			folders.put(folder, tr);
+		}
+		return tr;
+	}
+
+	public static Path file(Path dir, Resolution res) {
+		return dir.resolve("rollup_" + res.name + ".dat");
+	}
+
+	/**
+	 * Add a sample to the current bucket of each resolution.
+	 */
+	public synchronized void add(LocalDateTime t, int troom, int tterr) {
+		int minute = TraceIndex.epochMinute(t);
+		for (Level l : this.levels) {
+			try {
+				l.add(minute, troom, tterr);
+			} catch (IOException e) {
+				Util.println("Rollup " + l.res.name + " could not be written: " + e.getMessage());
+				l.close();
+			}
+		}
+	}
+
+	/**
+	 * @return the buckets of the given resolution that start between <code>from</code> and <code>to</code>,
+	 *         where <code>from</code> is rounded down to the start of its bucket
+	 */
+	public synchronized List<Bucket> query(Resolution res, LocalDateTime from, LocalDateTime to) throws IOException {
+		return this.levels[res.ordinal()].query(TraceIndex.epochMinute(from), TraceIndex.epochMinute(to));
+	}
+
+	/**
+	 * @return the buckets as an array of <code>{"time":"2023-03-10 16:00","n":60,"rmin":..,"ravg":..,"rmax":..,"tmin":..,"tavg":..,"tmax":..}</code>
+	 */
+	public static JsonArray toJson(List<Bucket> buckets) {
+		JsonArrayBuilder ab = Json.createArrayBuilder();
+		for (Bucket b : buckets) {
+			ab.add(Json.createObjectBuilder()
+					.add("time", b.getTime().format(dtfmt))
+					.add("n", b.count)
+					.add("rmin", b.rmin).add("ravg", b.getRoomAvg()).add("rmax", b.rmax)
+					.add("tmin", b.tmin).add("tavg", b.getTerrariumAvg()).add("tmax", b.tmax));
+		}
+		return ab.build();
+	}
+
+	public static class Bucket {
+		int minute;
+		int count;
+		short rmin;
+		short rmax;
+		int rsum;
+		short tmin;
+		short tmax;
+		int tsum;
+
+		Bucket(int minute) {
+			this.minute = minute;
+		}
+
+		void add(int troom, int tterr) {
+			if (this.count == 0) {
+				this.rmin = this.rmax = (short) troom;
+				this.tmin = this.tmax = (short) tterr;
+			} else {
+				this.rmin = (short) Math.min(this.rmin, troom);
+				this.rmax = (short) Math.max(this.rmax, troom);
+				this.tmin = (short) Math.min(this.tmin, tterr);
+				this.tmax = (short) Math.max(this.tmax, tterr);
+			}
+			this.rsum += troom;
+			this.tsum += tterr;
+			this.count++;
+		}
+
+		void write(ByteBuffer bb) {
+			bb.putInt(this.minute).putInt(this.count)
+				.putShort(this.rmin).putShort(this.rmax).putInt(this.rsum)
+				.putShort(this.tmin).putShort(this.tmax).putInt(this.tsum);
+		}
+
+		static Bucket read(ByteBuffer bb) {
+			Bucket b = new Bucket(bb.getInt());
+			b.count = bb.getInt();
+			b.rmin = bb.getShort();
+			b.rmax = bb.getShort();
+			b.rsum = bb.getInt();
+			b.tmin = bb.getShort();
+			b.tmax = bb.getShort();
+			b.tsum = bb.getInt();
+			return b;
+		}
+
+		public LocalDateTime getTime() {
+			return LocalDateTime.ofEpochSecond(this.minute * 60L, 0, ZoneOffset.UTC);
+		}
+
+		public int getCount() {
+			return this.count;
+		}
+
+		public int getRoomMin() {
+			return this.rmin;
+		}
+
+		public int getRoomMax() {
+			return this.rmax;
+		}
+
+		public double getRoomAvg() {
+			return Math.round((this.rsum * 10.0) / this.count) / 10.0;
+		}
+
+		public int getTerrariumMin() {
+			return this.tmin;
+		}
+
+		public int getTerrariumMax() {
+			return this.tmax;
+		}
+
+		public double getTerrariumAvg() {
+			return Math.round((this.tsum * 10.0) / this.count) / 10.0;
+		}
+	}
+
+	private class Level {
+		final Resolution res;
+		final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+		FileChannel channel;
+		int records;
+		Bucket current;
+
+		Level(Resolution res) {
+			this.res = res;
+		}
+
+		void add(int minute, int troom, int tterr) throws IOException {
+			open();
+			int start = minute - Math.floorMod(minute, this.res.minutes);
+			if ((this.current == null) || (start > this.current.minute)) {
+				this.current = new Bucket(start);
+				this.records++;
+			} else if (start < this.current.minute) {
+				// Clock has been set back; keep the file sorted
+				return;
+			}
+			this.current.add(troom, tterr);
+			this.record.clear();
+			this.current.write(this.record);
+			this.record.flip();
+			long pos = (this.records - 1L) * RECORD_SIZE;
+			while (this.record.hasRemaining()) {
+				pos += this.channel.write(this.record, pos);
+			}
+			if (this.records >= (2 * this.res.keep)) {
+				compact();
+			}
+		}
+
+		List<Bucket> query(int from, int to) throws IOException {
+			open();
+			int start = from - Math.floorMod(from, this.res.minutes);
+			// Binary search for the first bucket that starts at or after the start
+			int lo = 0;
+			int hi = this.records;
+			ByteBuffer bb = ByteBuffer.allocate(4);
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				bb.clear();
+				this.channel.read(bb, (long) mid * RECORD_SIZE);
+				if (bb.getInt(0) < start) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			List<Bucket> buckets = new ArrayList<>();
+			bb = ByteBuffer.allocate(RECORD_SIZE * 256);
+			long pos = (long) lo * RECORD_SIZE;
+			long end = (long) this.records * RECORD_SIZE;
+			while (pos < end) {
+				bb.clear();
+				if (end - pos < bb.capacity()) {
+					bb.limit((int) (end - pos));
+				}
+				while (bb.hasRemaining() && (this.channel.read(bb, pos + bb.position()) >= 0)) { }
+				pos += bb.position();
+				bb.flip();
+				while (bb.remaining() >= RECORD_SIZE) {
+					Bucket b = Bucket.read(bb);
+					if (b.minute > to) {
+						return buckets;
+					}
+					buckets.add(b);
+				}
+			}
+			return buckets;
+		}
+
+		private void open() throws IOException {
+			if (this.channel != null) {
+				return;
+			}
+			this.channel = FileChannel.open(file(TemperatureRollup.this.dir, this.res),
+					StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			this.records = (int) (this.channel.size() / RECORD_SIZE);
+			this.current = null;
+			if (this.records > 0) {
+				// Continue with the last bucket
+				this.record.clear();
+				this.channel.read(this.record, (this.records - 1L) * RECORD_SIZE);
+				this.record.flip();
+				this.current = Bucket.read(this.record);
+			}
+		}
+
+		private void compact() throws IOException {
+			Path p = file(TemperatureRollup.this.dir, this.res);
+			Path tmp = p.resolveSibling(p.getFileName() + ".tmp");
+			try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				long pos = (long) (this.records - this.res.keep) * RECORD_SIZE;
+				long count = (long) this.res.keep * RECORD_SIZE;
+				while (count > 0) {
+					long n = this.channel.transferTo(pos, count, out);
+					pos += n;
+					count -= n;
+				}
+				out.force(false);
+			}
+			close();
+			Files.move(tmp, p, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			open();
+		}
+
+		void close() {
+			if (this.channel != null) {
+				try {
+					this.channel.close();
+				} catch (IOException e) {
+				}
+				this.channel = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.trace;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import nl.das.tcu.Util;
+
+/**
+ * Compresses the trace files of previous days in the background.
+ *
+ * After a rollover all trace files with the same prefix except the newest one are gzipped
+ * (<code>temp_20230310</code> becomes <code>temp_20230310.gz</code>). The compressed file is written
+ * to a temporary file first and replaces the trace file in one atomic step.
+ * The minute index of the file stays as it is; it refers to the uncompressed content.
+ */
+public class TraceCompactor {
+
+	public static final String EXT = ".gz";
+
+	public static boolean enabled = true;
+
+	private static final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "TraceCompactor");
+		t.setDaemon(true);
+		t.setPriority(Thread.MIN_PRIORITY);
+		return t;
+	});
+
+	public static void configure(Properties props) {
+		enabled = Boolean.parseBoolean(props.getProperty("trace.compress", "" + enabled));
+	}
+
+	public static Path compressed(Path tracefile) {
+		return tracefile.resolveSibling(tracefile.getFileName().toString() + EXT);
+	}
+
+	/**
+	 * Compress the older trace files with the given prefix in the background.
+	 *
+	 * @param writer when not null, the writer is flushed first so it has closed the previous trace file
+	 */
+	public static void compactLater(String folder, String prefix, TraceWriter writer) {
+		if (!enabled) {
+			return;
+		}
+		compactor.execute(() -> {
+			if (writer != null) {
+				writer.flush();
+			}
+			compact(folder, prefix);
+		});
+	}
+
+	/**
+	 * Compress all trace files with the given prefix except the newest one.
+	 */
+	public static void compact(String folder, String prefix) {
+		try {
+			List<String> files = TraceFiles.of(folder).list(prefix);
+			for (int i = 0; i < files.size() - 1; i++) {
+				Path p = Paths.get(folder, files.get(i));
+				if (Files.exists(p)) {
+					compress(TraceFiles.of(folder), p);
+				}
+			}
+		} catch (IOException e) {
+			Util.println("Trace files could not be compressed: " + e.getMessage());
+		}
+	}
+
+	private static void compress(TraceFiles tf, Path tracefile) throws IOException {
+		Path tmp = tracefile.resolveSibling("." + tracefile.getFileName().toString() + EXT + ".tmp");
+		try {
+			try (InputStream in = Files.newInputStream(tracefile);
+				 OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp), 8192)) {
+				in.transferTo(out);
+			}
+			try (FileChannel fc = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+				fc.force(true);
+			}
+			Files.setLastModifiedTime(tmp, Files.getLastModifiedTime(tracefile));
+			tf.replace(tracefile, tmp);
+		} catch (NoSuchFileException e) {
+			// Deleted by a rollover in the meantime
+			Files.deleteIfExists(tmp);
+		} catch (IOException e) {
+			Files.deleteIfExists(tmp);
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.trace;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * In-memory index of the trace files in a trace folder.
+ *
+ * The index is read once from disk and then kept up to date by the rotation itself,
+ * so a rollover does not have to walk the trace folder. When the modification time of the
+ * folder shows that someone else changed it, the folder is read again.
+ *
+ * For each prefix an empty spare file (<code>.state_next</code>, <code>.temp_next</code>) is created
+ * in the background. A rollover renames the spare file to the new trace file in one atomic step.
+ *
+ * Trace files of previous days may have been compressed (see {@link TraceCompactor}).
+ * They are listed without the <code>.gz</code> extension and are read transparently.
+ */
+public class TraceFiles {
+
+	private static DateTimeFormatter tffmt = DateTimeFormatter.ofPattern("yyyyMMdd");
+	private static final Map<String, TraceFiles> folders = new HashMap<>();
+	private static final ExecutorService preparer = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "TraceFiles");
+		t.setDaemon(true);
+		t.setPriority(Thread.MIN_PRIORITY);
+		return t;
+	});
+
+	private final Path dir;
+	private final Map<String, TreeSet<String>> index = new HashMap<>();
+	private FileTime synced;
+
+	private TraceFiles(Path dir) {
+		this.dir = dir;
+	}
+
+	public static synchronized TraceFiles of(String folder) {
+		TraceFiles tf = folders.get(folder);
+		if (tf == null) {
+			tf = new TraceFiles(Paths.get(folder));
+			folders.put(folder, tf);
+		}
+		return tf;
+	}
+
+	/**
+	 * Open a trace file, or its compressed version when it has been compressed.
+	 *
+	 * @param offset the number of (uncompressed) bytes to skip
+	 */
+	public static InputStream newInputStream(Path tracefile, long offset) throws IOException {
+		try {
+			FileChannel fc = FileChannel.open(tracefile, StandardOpenOption.READ);
+			fc.position(offset);
+			return Channels.newInputStream(fc);
+		} catch (NoSuchFileException e) {
+			InputStream in = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(TraceCompactor.compressed(tracefile))), 8192);
+			long skip = offset;
+			while (skip > 0) {
+				long n = in.skip(skip);
+				if (n <= 0) {
+					break;
+				}
+				skip -= n;
+			}
+			return in;
+		}
+	}
+
+	/**
+	 * @return the (uncompressed) size of a trace file, or of its compressed version when it has been compressed
+	 */
+	public static long size(Path tracefile) throws IOException {
+		try {
+			return Files.size(tracefile);
+		} catch (NoSuchFileException e) {
+			// The last 4 bytes of a gzip file are the uncompressed size (modulo 2^32) in little endian
+			try (FileChannel fc = FileChannel.open(TraceCompactor.compressed(tracefile), StandardOpenOption.READ)) {
+				ByteBuffer bb = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+				long pos = fc.size() - 4;
+				while (bb.hasRemaining() && (pos >= 0)) {
+					int n = fc.read(bb, pos);
+					if (n < 0) {
+						break;
+					}
+					pos += n;
+				}
+				bb.flip();
+				return bb.getInt() & 0xFFFFFFFFL;
+			}
+		}
+	}
+
+	public static String readString(Path tracefile) throws IOException {
+		try (InputStream in = newInputStream(tracefile, 0L)) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * @return the sorted names of the trace files that start with the given prefix
+	 */
+	public synchronized List<String> list(String prefix) throws IOException {
+		return new ArrayList<>(files(prefix));
+	}
+
+	/**
+	 * Start a new trace file for the given day.
+	 * If the folder already contains <code>max</code> files with this prefix the oldest one is deleted.
+	 * If a file for that day already exists it is replaced by an empty one.
+	 *
+	 * @return the name of the new trace file
+	 */
+	public synchronized String rotate(String prefix, LocalDateTime now, int max) throws IOException {
+		TreeSet<String> files = files(prefix);
+		String name = prefix + now.format(tffmt);
+		if (!files.contains(name)) {
+			while (!files.isEmpty() && (files.size() >= max)) {
+				delete(this.dir.resolve(files.pollFirst()));
+			}
+		}
+		Path p = this.dir.resolve(name);
+		Files.deleteIfExists(TraceIndex.sidecar(p));
+		Files.deleteIfExists(TraceCompactor.compressed(p));
+		try {
+			Files.move(spare(prefix), p, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (NoSuchFileException e) {
+			// No spare file prepared (yet)
+			Files.deleteIfExists(p);
+			Files.createFile(p);
+		}
+		files.add(name);
+		markSynced();
+		preparer.execute(() -> prepare(prefix));
+		return name;
+	}
+
+	/**
+	 * Create the spare file that the next rollover will use.
+	 */
+	synchronized void prepare(String prefix) {
+		try {
+			Files.createFile(spare(prefix));
+			markSynced();
+		} catch (FileAlreadyExistsException e) {
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void delete(Path tracefile) throws IOException {
+		Files.deleteIfExists(tracefile);
+		Files.deleteIfExists(TraceCompactor.compressed(tracefile));
+		Files.deleteIfExists(TraceIndex.sidecar(tracefile));
+	}
+
+	private Path spare(String prefix) {
+		return this.dir.resolve("." + prefix + "next");
+	}
+
+	private TreeSet<String> files(String prefix) throws IOException {
+		FileTime modified = Files.getLastModifiedTime(this.dir);
+		if (!modified.equals(this.synced)) {
+			// Folder has been changed outside the index
+			this.index.clear();
+			this.synced = modified;
+		}
+		TreeSet<String> files = this.index.get(prefix);
+		if (files == null) {
+			files = new TreeSet<>();
+			try (DirectoryStream<Path> ds = Files.newDirectoryStream(this.dir, prefix + "*")) {
+				for (Path p : ds) {
+					String name = p.getFileName().toString();
+					if (!Files.isDirectory(p)) {
+						files.add(name.endsWith(TraceCompactor.EXT) ? name.substring(0, name.length() - TraceCompactor.EXT.length()) : name);
+					}
+				}
+			}
+			this.index.put(prefix, files);
+		}
+		return files;
+	}
+
+	/**
+	 * Replace a trace file by its compressed version, unless it has been deleted in the meantime.
+	 */
+	synchronized void replace(Path tracefile, Path compressed) throws IOException {
+		if (Files.exists(tracefile)) {
+			Files.move(compressed, TraceCompactor.compressed(tracefile), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			Files.delete(tracefile);
+		} else {
+			Files.deleteIfExists(compressed);
+		}
+		markSynced();
+	}
+
+	private void markSynced() throws IOException {
+		this.synced = Files.getLastModifiedTime(this.dir);
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.trace;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Sparse timestamp index of a trace file, stored in a sidecar file next to it
+ * (<code>temp_20230310</code> has the index <code>.temp_20230310.idx</code>).
+ *
+ * The index contains one record for each minute in which a line was written:
+ * the minute (wall clock minutes since 1970-01-01 00:00) and the offset of the first line of that minute.
+ * A record is 12 bytes, so a full day is 17 KB.
+ */
+public class TraceIndex {
+
+	static final int RECORD_SIZE = 12;
+
+	private FileChannel channel;
+	private ByteBuffer records = ByteBuffer.allocate(RECORD_SIZE * 64);
+	private String lastMinute = "";
+	private int lastEpochMinute = 0;
+
+	public static Path sidecar(Path tracefile) {
+		String name = tracefile.getFileName().toString();
+		if (name.endsWith(TraceCompactor.EXT)) {
+			// The index of the uncompressed content
+			name = name.substring(0, name.length() - TraceCompactor.EXT.length());
+		}
+		return tracefile.resolveSibling("." + name + ".idx");
+	}
+
+	/**
+	 * @return the offset of the first line written in or after the minute of <code>from</code>,
+	 *         0 if there is no index and -1 if the whole file is older than <code>from</code>
+	 */
+	public static long find(Path tracefile, LocalDateTime from) throws IOException {
+		int minute = epochMinute(from);
+		try (FileChannel fc = FileChannel.open(sidecar(tracefile), StandardOpenOption.READ)) {
+			int n = (int) (fc.size() / RECORD_SIZE);
+			if (n == 0) {
+				return 0L;
+			}
+			ByteBuffer bb = ByteBuffer.allocate(n * RECORD_SIZE);
+			while (bb.hasRemaining() && (fc.read(bb) >= 0)) { }
+			// Binary search for the first record with a minute >= from
+			int lo = 0;
+			int hi = n;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (bb.getInt(mid * RECORD_SIZE) < minute) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			return lo == n ? -1L : bb.getLong((lo * RECORD_SIZE) + 4);
+		} catch (NoSuchFileException e) {
+			return 0L;
+		}
+	}
+
+	static int epochMinute(LocalDateTime t) {
+		return (int) (t.toEpochSecond(ZoneOffset.UTC) / 60L);
+	}
+
+	/**
+	 * Start indexing the given trace file. Lines are appended to its end.
+	 */
+	void open(Path tracefile) throws IOException {
+		close();
+		this.channel = FileChannel.open(sidecar(tracefile), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		this.lastMinute = "";
+		this.lastEpochMinute = 0;
+	}
+
+	/**
+	 * Register a line that starts at the given offset of the trace file.
+	 * Lines start with "yyyy-MM-dd HH:mm:ss".
+	 */
+	void line(String line, long offset) {
+		if ((this.channel == null) || (line.length() < 16) || line.regionMatches(0, this.lastMinute, 0, 16)) {
+			return;
+		}
+		try {
+			LocalDateTime t = LocalDateTime.of(
+					Integer.parseInt(line.substring(0, 4)), Integer.parseInt(line.substring(5, 7)), Integer.parseInt(line.substring(8, 10)),
+					Integer.parseInt(line.substring(11, 13)), Integer.parseInt(line.substring(14, 16)));
+			this.lastMinute = line.substring(0, 16);
+			int minute = epochMinute(t);
+			if (minute <= this.lastEpochMinute) {
+				// Clock has been set back; keep the index sorted
+				return;
+			}
+			this.lastEpochMinute = minute;
+			if (!this.records.hasRemaining()) {
+				// More minutes in one batch than expected; records may only be written after the lines
+				ByteBuffer bb = ByteBuffer.allocate(this.records.capacity() * 2);
+				this.records.flip();
+				bb.put(this.records);
+				this.records = bb;
+			}
+			this.records.putInt(minute);
+			this.records.putLong(offset);
+		} catch (RuntimeException e) {
+			// Not a timestamped line
+		}
+	}
+
+	/**
+	 * Write the collected records. Must be called after the lines themselves have been written.
+	 */
+	void flush() throws IOException {
+		if ((this.channel != null) && (this.records.position() > 0)) {
+			this.records.flip();
+			while (this.records.hasRemaining()) {
+				this.channel.write(this.records);
+			}
+		}
+		this.records.clear();
+	}
+
+	void close() throws IOException {
+		if (this.channel != null) {
+			flush();
+			this.channel.close();
+			this.channel = null;
+		}
+		this.records.clear();
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.trace;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Reads the lines of a time window from the trace files.
+ */
+public class TraceReader {
+
+	private static DateTimeFormatter dtfmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+	private static DateTimeFormatter tffmt = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+	/**
+	 * Parse a from/to parameter: "2023-03-10T16:00", "2023-03-10T16:00:30" or "2023-03-10 16:00".
+	 */
+	public static LocalDateTime parseTime(String s) {
+		return LocalDateTime.parse(s.trim().replace(' ', 'T'));
+	}
+
+	/**
+	 * Append all lines with a timestamp between <code>from</code> and <code>to</code> (both inclusive)
+	 * of the trace files with the given prefix to <code>out</code>.
+	 * A trace file covers at most one day from the moment it has been started,
+	 * so the files of the day before <code>from</code> up to the day of <code>to</code> are read.
+	 * The index of each file is used to skip to the first minute of the window.
+	 */
+	public static void copyRange(String folder, String prefix, LocalDateTime from, LocalDateTime to, Appendable out) throws IOException {
+		String first = prefix + from.toLocalDate().minusDays(1).format(tffmt);
+		String last = prefix + to.toLocalDate().format(tffmt);
+		String fromStr = from.format(dtfmt);
+		String toStr = to.format(dtfmt);
+		for (String fname : TraceFiles.of(folder).list(prefix)) {
+			if ((fname.compareTo(first) >= 0) && (fname.compareTo(last) <= 0)) {
+				copyRange(Paths.get(folder, fname), from, fromStr, toStr, out);
+			}
+		}
+	}
+
+	private static void copyRange(Path tracefile, LocalDateTime from, String fromStr, String toStr, Appendable out) throws IOException {
+		long offset = TraceIndex.find(tracefile, from);
+		if (offset < 0) {
+			return;
+		}
+		try (InputStream in = TraceFiles.newInputStream(tracefile, offset)) {
+			BufferedReader rdr = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+			String line;
+			while ((line = rdr.readLine()) != null) {
+				if (line.length() < 19) {
+					continue;
+				}
+				// The timestamps are sortable as text
+				String ts = line.substring(0, 19);
+				if (ts.compareTo(toStr) > 0) {
+					break;
+				}
+				if (ts.compareTo(fromStr) >= 0) {
+					out.append(line).append('\n');
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.trace;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+/**
+ * Transfer of a trace file in chunks, so a broken Bluetooth connection does not have to start from zero.
+ *
+ * <code>open</code> returns the (uncompressed) size and the CRC32 of the file; <code>readChunk</code> returns the bytes
+ * from an offset, base64 encoded and optionally deflated. The server keeps no state per transfer, so after a
+ * reconnect the client just continues with the offset of the first byte it has not received.
+ * Trace files only grow, so the bytes before <code>size</code> do not change while the file is being transferred.
+ * When the client passes that <code>size</code> to <code>readChunk</code> nothing after it is read, so the transfer
+ * matches the CRC32 of <code>open</code> even when the file has grown in the meantime.
+ *
+ * A compressed trace file cannot be read from an offset without decompressing everything before it, so the
+ * stream of the last chunk is kept open (for at most <code>maxReaders</code> files) and the next chunk continues
+ * where it stopped; only a client that goes back has to start from the beginning of the file.
+ *
+ * Flow control: a chunk is at most <code>maxChunkSize</code> bytes and at most <code>maxReaders</code> chunks are read
+ * at the same time; a request that has to wait too long is refused with a "busy" error and can be retried.
+ */
+public class TraceTransfer {
+
+	public static int maxChunkSize = 16384;
+	public static int maxReaders = 2;
+
+	private static final long WAIT_MILLIS = 5000L;
+	private static Semaphore readers = new Semaphore(maxReaders);
+	/** Size and CRC32 of the files that have been opened, until they change */
+	private static final Map<Path, Info> infos = new ConcurrentHashMap<>();
+	/** Open streams of compressed files, by the offset of the next byte, with the least recently used first */
+	private static final Map<Path, Cursor> cursors = new LinkedHashMap<>();
+
+	private static class Info {
+		final FileTime modified;
+		final long size;
+		final long crc;
+
+		Info(FileTime modified, long size, long crc) {
+			this.modified = modified;
+			this.size = size;
+			this.crc = crc;
+		}
+	}
+
+	private static class Cursor {
+		final FileTime modified;
+		final PushbackInputStream in;
+		long position;
+
+		Cursor(FileTime modified, InputStream in, long position) {
+			this.modified = modified;
+			this.in = new PushbackInputStream(in, 1);
+			this.position = position;
+		}
+
+		void close() {
+			try {
+				this.in.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/**
+	 * Too many chunks are being read; the request can be retried later.
+	 */
+	public static class BusyException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		BusyException() {
+			super("Server is busy, try again later.");
+		}
+	}
+
+	private TraceTransfer() {
+	}
+
+	public static void configure(Properties props) {
+		maxChunkSize = Integer.parseInt(props.getProperty("trace.chunkSize", "" + maxChunkSize));
+		maxReaders = Integer.parseInt(props.getProperty("trace.chunkReaders", "" + maxReaders));
+		readers = new Semaphore(maxReaders);
+	}
+
+	/**
+	 * @return <code>{"fname":..., "size":..., "crc":..., "chunk":...}</code> with the CRC32 of the first
+	 *         <code>size</code> bytes and the max size of a chunk
+	 */
+	public static JsonObject open(String folder, String fname) throws IOException {
+		Path path = path(folder, fname);
+		FileTime modified = modified(path);
+		Info info = infos.get(path);
+		if ((info == null) || !info.modified.equals(modified)) {
+			acquire();
+			try (InputStream in = TraceFiles.newInputStream(path, 0L)) {
+				CRC32 crc = new CRC32();
+				byte[] buf = new byte[8192];
+				long size = 0;
+				int n;
+				while ((n = in.read(buf)) > 0) {
+					crc.update(buf, 0, n);
+					size += n;
+				}
+				info = new Info(modified, size, crc.getValue());
+				infos.put(path, info);
+			} finally {
+				readers.release();
+			}
+		}
+		return Json.createObjectBuilder()
+				.add("fname", fname)
+				.add("size", info.size)
+				.add("crc", info.crc)
+				.add("chunk", maxChunkSize)
+				.build();
+	}
+
+	/**
+	 * @param size the size returned by <code>open</code>; nothing after it is read (-1: read up to the end of the file)
+	 * @return <code>{"offset":..., "length":..., "crc":..., "deflated":..., "eof":..., "data":"base64"}</code> where
+	 *         length and crc are those of the (uncompressed) bytes in this chunk
+	 */
+	public static JsonObject readChunk(String folder, String fname, long offset, int length, long size, boolean deflate) throws IOException {
+		Path path = path(folder, fname);
+		int max = Math.min(length, maxChunkSize);
+		if (size >= 0) {
+			max = (int) Math.max(0L, Math.min(max, size - offset));
+		}
+		byte[] buf = new byte[max];
+		int len = 0;
+		boolean eof = false;
+		acquire();
+		Cursor cursor = null;
+		try {
+			cursor = cursor(path, offset);
+			while (len < buf.length) {
+				int n = cursor.in.read(buf, len, buf.length - len);
+				if (n < 0) {
+					eof = true;
+					break;
+				}
+				len += n;
+			}
+			cursor.position = offset + len;
+			if ((size >= 0) && (cursor.position >= size)) {
+				eof = true;
+			} else if (!eof) {
+				int b = cursor.in.read();
+				if (b < 0) {
+					eof = true;
+				} else {
+					cursor.in.unread(b);
+				}
+			}
+		} catch (IOException e) {
+			if (cursor != null) {
+				cursor.close();
+				cursor = null;
+			}
+			throw e;
+		} finally {
+			if (cursor != null) {
+				release(path, cursor, eof);
+			}
+			readers.release();
+		}
+		CRC32 crc = new CRC32();
+		crc.update(buf, 0, len);
+		byte[] data = buf;
+		int dataLen = len;
+		if (deflate && (len > 0)) {
+			Deflater d = new Deflater(Deflater.BEST_SPEED);
+			try {
+				d.setInput(buf, 0, len);
+				d.finish();
+				// Trace lines compress well; if they do not, the chunk is sent as it is
+				byte[] out = new byte[len];
+				int n = d.deflate(out);
+				if (d.finished()) {
+					data = out;
+					dataLen = n;
+				} else {
+					deflate = false;
+				}
+			} finally {
+				d.end();
+			}
+		}
+		return Json.createObjectBuilder()
+				.add("offset", offset)
+				.add("length", len)
+				.add("crc", crc.getValue())
+				.add("deflated", deflate && (len > 0))
+				.add("eof", eof)
+				.add("data", Base64.getEncoder().encodeToString(dataLen == data.length ? data : Arrays.copyOf(data, dataLen)))
+				.build();
+	}
+
+	/**
+	 * @return the kept stream of a compressed file when it is at or before the offset, else a new stream at the offset
+	 */
+	private static Cursor cursor(Path path, long offset) throws IOException {
+		Cursor cursor;
+		synchronized (cursors) {
+			// Taken out, so no one else reads from it at the same time
+			cursor = cursors.remove(path);
+		}
+		if (cursor != null) {
+			if ((cursor.position <= offset) && cursor.modified.equals(modified(path))) {
+				long skip = offset - cursor.position;
+				while (skip > 0) {
+					long n = cursor.in.skip(skip);
+					if (n <= 0) {
+						break;
+					}
+					skip -= n;
+				}
+				cursor.position = offset;
+				return cursor;
+			}
+			cursor.close();
+		}
+		return new Cursor(modified(path), TraceFiles.newInputStream(path, offset), offset);
+	}
+
+	/**
+	 * Keep the stream of a compressed file for the next chunk; a plain file is opened at the offset each time.
+	 */
+	private static void release(Path path, Cursor cursor, boolean eof) {
+		if (eof || Files.exists(path)) {
+			cursor.close();
+			return;
+		}
+		synchronized (cursors) {
+			Cursor old = cursors.put(path, cursor);
+			if (old != null) {
+				old.close();
+			}
+			Iterator<Cursor> it = cursors.values().iterator();
+			while ((cursors.size() > maxReaders) && it.hasNext()) {
+				it.next().close();
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Only the trace files in the trace folder can be read.
+	 */
+	private static Path path(String folder, String fname) throws IOException {
+		if (!(fname.startsWith("temp_") || fname.startsWith("state_")) || (fname.indexOf('/') >= 0) || (fname.indexOf('\\') >= 0)) {
+			throw new NoSuchFileException(fname);
+		}
+		return Paths.get(folder, fname);
+	}
+
+	private static FileTime modified(Path path) throws IOException {
+		try {
+			return Files.getLastModifiedTime(path);
+		} catch (NoSuchFileException e) {
+			return Files.getLastModifiedTime(TraceCompactor.compressed(path));
+		}
+	}
+
+	private static void acquire() throws IOException {
+		try {
+			if (!readers.tryAcquire(WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+				throw new BusyException();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted");
+		}
+	}
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu.trace;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import nl.das.tcu.Util;
+
+/**
+ * Appends trace lines to a trace file from a background thread.
+ *
+ * There is one writer per trace stream (state and temperature). The calling thread only puts the
+ * line on a bounded lock-free queue, so switching a device never waits for the SD card.
+ * The appender thread keeps the current trace file open and writes the lines in batches.
+ * A batch is written when it contains <code>batchSize</code> lines or when the oldest line
+ * has been waiting for <code>flushMillis</code> milliseconds.
+ * When the queue is full the line is dropped and counted.
+ * While writing, the appender maintains the minute index of the file (see {@link TraceIndex}).
+ */
+public class TraceWriter {
+
+	/**
+	 * When the trace file is forced to the storage device.
+	 * NEVER leaves it to the OS, ON_CLOSE forces when the writer switches to another file,
+	 * BATCH forces after each batch that has been written.
+	 */
+	public enum FsyncPolicy { NEVER, ON_CLOSE, BATCH }
+
+	public static int queueSize = 1024;
+	public static int batchSize = 64;
+	public static long flushMillis = 1000L;
+	public static FsyncPolicy fsyncPolicy = FsyncPolicy.ON_CLOSE;
+
+	private static final TraceWriter stateWriter = new TraceWriter("state");
+	private static final TraceWriter temperatureWriter = new TraceWriter("temp");
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final String name;
+	private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger queued = new AtomicInteger();
+	private volatile Thread appender;
+
+	// Counters
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong backpressure = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private volatile long maxBatchMillis = 0L;
+
+	// Only used by the appender thread
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private FileChannel channel;
+	private long offset;
+	private final TraceIndex index = new TraceIndex();
+	private Path currentPath;
+	private int pending = 0;
+	private long firstPendingNanos;
+
+	private TraceWriter(String name) {
+		this.name = name;
+	}
+
+	public static TraceWriter state() {
+		return stateWriter;
+	}
+
+	public static TraceWriter temperature() {
+		return temperatureWriter;
+	}
+
+	/**
+	 * Read the trace settings from the properties (see config.properties).
+	 * Properties that are not present keep their default value.
+	 */
+	public static void configure(Properties props) {
+		queueSize = Integer.parseInt(props.getProperty("trace.queueSize", "" + queueSize));
+		batchSize = Integer.parseInt(props.getProperty("trace.batchSize", "" + batchSize));
+		flushMillis = Long.parseLong(props.getProperty("trace.flushMillis", "" + flushMillis));
+		fsyncPolicy = FsyncPolicy.valueOf(props.getProperty("trace.fsync", fsyncPolicy.name()).toUpperCase());
+	}
+
+	/**
+	 * Wait until both trace streams have written everything that has been queued.
+	 */
+	public static void flushAll() {
+		stateWriter.flush();
+		temperatureWriter.flush();
+	}
+
+	/**
+	 * Queue a line for the given trace file. Never blocks.
+	 *
+	 * @return false if the line has been dropped because the queue is full
+	 */
+	public boolean append(Path tracefile, String line) {
+		return offer(new Entry(tracefile, line, null));
+	}
+
+	/**
+	 * Close the current trace file once all lines queued before this call have been written.
+	 * Must be called when a trace file has been (re)created, so the next line opens the new file.
+	 */
+	public void rotate() {
+		if (this.appender != null) {
+			this.queued.incrementAndGet();
+			this.queue.offer(new Entry(null, null, null));
+			LockSupport.unpark(this.appender);
+		}
+	}
+
+	/**
+	 * Wait until all lines queued before this call have been written to disk.
+	 */
+	public void flush() {
+		if (this.appender == null) {
+			return;
+		}
+		CountDownLatch done = new CountDownLatch(1);
+		// A flush request is never dropped
+		this.queued.incrementAndGet();
+		this.queue.offer(new Entry(null, null, done));
+		LockSupport.unpark(this.appender);
+		try {
+			done.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public long getWritten() {
+		return this.written.get();
+	}
+
+	public long getDropped() {
+		return this.dropped.get();
+	}
+
+	public long getBackpressure() {
+		return this.backpressure.get();
+	}
+
+	public String getStats() {
+		return String.format("trace %s: written=%d batches=%d dropped=%d backpressure=%d errors=%d max_batch_ms=%d",
+				this.name, this.written.get(), this.batches.get(), this.dropped.get(), this.backpressure.get(),
+				this.errors.get(), this.maxBatchMillis);
+	}
+
+	private boolean offer(Entry e) {
+		int size = this.queued.incrementAndGet();
+		if (size > queueSize) {
+			this.queued.decrementAndGet();
+			this.dropped.incrementAndGet();
+			return false;
+		}
+		if (size > (queueSize / 2)) {
+			// The appender cannot keep up with the producers
+			this.backpressure.incrementAndGet();
+		}
+		this.queue.offer(e);
+		Thread t = this.appender;
+		if (t == null) {
+			t = start();
+		}
+		if ((size == 1) || (size == batchSize)) {
+			LockSupport.unpark(t);
+		}
+		return true;
+	}
+
+	private synchronized Thread start() {
+		if (this.appender == null) {
+			Thread t = new Thread(this::run);
+			t.setName("TraceWriter-" + this.name);
+			t.setDaemon(true);
+			t.start();
+			this.appender = t;
+		}
+		return this.appender;
+	}
+
+	private void run() {
+		long flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+		while (true) {
+			Entry e = this.queue.poll();
+			if (e == null) {
+				if (this.pending == 0) {
+					LockSupport.parkNanos(this, flushNanos);
+				} else {
+					long wait = (this.firstPendingNanos + flushNanos) - System.nanoTime();
+					if (wait <= 0) {
+						writeBatch();
+					} else {
+						LockSupport.parkNanos(this, wait);
+					}
+				}
+				continue;
+			}
+			this.queued.decrementAndGet();
+			if (e.done != null) {
+				writeBatch();
+				e.done.countDown();
+				continue;
+			}
+			if (e.path == null) {
+				writeBatch();
+				close();
+				this.currentPath = null;
+				continue;
+			}
+			if (!e.path.equals(this.currentPath) || (this.channel == null)) {
+				writeBatch();
+				close();
+				this.currentPath = e.path;
+				open();
+			}
+			byte[] bytes = e.line.getBytes(StandardCharsets.UTF_8);
+			if (bytes.length > this.buffer.remaining()) {
+				writeBatch();
+			}
+			if (this.channel != null) {
+				this.index.line(e.line, this.offset + this.buffer.position());
+			}
+			if (bytes.length > this.buffer.remaining()) {
+				// Line larger than the buffer: write it directly
+				write(ByteBuffer.wrap(bytes), 1);
+				continue;
+			}
+			if (this.pending == 0) {
+				this.firstPendingNanos = System.nanoTime();
+			}
+			this.buffer.put(bytes);
+			this.pending++;
+			if (this.pending >= batchSize) {
+				writeBatch();
+			}
+		}
+	}
+
+	private void writeBatch() {
+		if (this.pending == 0) {
+			return;
+		}
+		this.buffer.flip();
+		write(this.buffer, this.pending);
+		this.buffer.clear();
+		this.pending = 0;
+	}
+
+	private void open() {
+		try {
+			// The trace file is created when tracing starts, so it must exist
+			this.channel = FileChannel.open(this.currentPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			this.offset = this.channel.size();
+			this.index.open(this.currentPath);
+		} catch (IOException ex) {
+			this.errors.incrementAndGet();
+			Util.println("Trace " + this.currentPath + " could not be opened: " + ex.getMessage());
+			close();
+		}
+	}
+
+	private void write(ByteBuffer bb, int nrOfLines) {
+		long start = System.nanoTime();
+		try {
+			if (this.channel == null) {
+				throw new IOException("Trace file is not open");
+			}
+			while (bb.hasRemaining()) {
+				this.offset += this.channel.write(bb);
+			}
+			this.index.flush();
+			if (fsyncPolicy == FsyncPolicy.BATCH) {
+				this.channel.force(false);
+			}
+			this.written.addAndGet(nrOfLines);
+			this.batches.incrementAndGet();
+		} catch (IOException ex) {
+			this.errors.incrementAndGet();
+			this.dropped.addAndGet(nrOfLines);
+			Util.println("Trace " + this.currentPath + " could not be written: " + ex.getMessage());
+			close();
+		}
+		long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		if (ms > this.maxBatchMillis) {
+			this.maxBatchMillis = ms;
+		}
+	}
+
+	private void close() {
+		try {
+			this.index.close();
+		} catch (IOException ex) {
+			this.errors.incrementAndGet();
+		}
+		if (this.channel != null) {
+			try {
+				if (fsyncPolicy != FsyncPolicy.NEVER) {
+					this.channel.force(false);
+				}
+				this.channel.close();
+			} catch (IOException ex) {
+				this.errors.incrementAndGet();
+			}
+			this.channel = null;
+		}
+	}
+
+	private static class Entry {
+		final Path path;
+		final String line;
+		final CountDownLatch done;
+
+		Entry(Path path, String line, CountDownLatch done) {
+			this.path = path;
+			this.line = line;
+			this.done = done;
+		}
+	}
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.microedition.io.StreamConnection;
+import javax.microedition.io.StreamConnectionNotifier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import nl.das.tcu.objects.Terrarium;
+import nl.das.tcu.rest.BTServer;
+
+/**
+ * The Bluetooth server with in-memory connections instead of RFCOMM.
+ */
+public class BTServerTest {
+
+	private FakeNotifier notifier;
+	private BTServer server;
+
+	@BeforeAll
+	public static void beforeAll () throws IOException {
+		Terrarium.traceFolder = "src/test/resources/tracefiles";
+		Terrarium terrarium = Terrarium.getInstance(Files.readString(Paths.get("src/test/resources/settings.json")));
+		terrarium.setNow(LocalDateTime.now());
+		terrarium.initMockDevices();
+		terrarium.initDeviceState();
+	}
+
+	@BeforeEach
+	public void before () {
+		this.notifier = new FakeNotifier();
+		this.server = new BTServer(this.notifier);
+	}
+
+	@AfterEach
+	public void after () {
+		this.server.stop();
+		BTServer.maxClients = 4;
+		BTServer.idleTimeoutMillis = 300000L;
+	}
+
+	@Test
+	public void testConcurrentClients() throws Exception {
+		start();
+		FakeConnection c1 = this.notifier.connect();
+		FakeConnection c2 = this.notifier.connect();
+		// The first client sends half a command and stalls
+		c1.send("{\"cmd\":\"get");
+		c2.send("{\"msgId\":\"00000000-0000-0000-0000-000000000002\",\"cmd\":\"getState\"}\u0003");
+		String res = c2.receive();
+		assertTrue(res.contains("00000000-0000-0000-0000-000000000002"), "Second client is not blocked by the first");
+		assertTrue(res.contains("\"trace\""));
+		c1.send("State\"}\u0003");
+		assertTrue(c1.receive().contains("\"state\""));
+		assertEquals(2, this.server.getNrOfClients());
+	}
+
+	@Test
+	public void testMaxClients() throws Exception {
+		BTServer.maxClients = 2;
+		start();
+		this.notifier.connect();
+		this.notifier.connect();
+		FakeConnection c3 = this.notifier.connect();
+		assertTrue(c3.awaitClosed(5000), "Third client is refused");
+		assertEquals(2, this.server.getNrOfClients());
+	}
+
+	@Test
+	public void testIdleTimeout() throws Exception {
+		BTServer.idleTimeoutMillis = 200L;
+		start();
+		FakeConnection c1 = this.notifier.connect();
+		assertTrue(c1.awaitClosed(5000), "Idle client is disconnected");
+		for (int i = 0; (i < 50) && (this.server.getNrOfClients() > 0); i++) {
+			Thread.sleep(20);
+		}
+		assertEquals(0, this.server.getNrOfClients());
+	}
+
+	@Test
+	public void testIdleSubscribed() throws Exception {
+		BTServer.idleTimeoutMillis = 200L;
+		start();
+		FakeConnection c1 = this.notifier.connect();
+		c1.send("{\"cmd\":\"subscribe\",\"data\":{\"types\":[\"device\"]}}\u0003");
+		assertTrue(c1.receive().contains("\"seq\""));
+		assertFalse(c1.awaitClosed(1000), "Subscribed client is not disconnected while it is silent");
+		assertEquals(1, this.server.getNrOfClients());
+		c1.send("{\"cmd\":\"unsubscribe\"}\u0003");
+		c1.receive();
+		assertTrue(c1.awaitClosed(5000), "Idle client is disconnected after unsubscribe");
+	}
+
+	@Test
+	public void testSubscribe() throws Exception {
+		start();
+		FakeConnection c1 = this.notifier.connect();
+		c1.send("{\"cmd\":\"subscribe\",\"data\":{\"types\":[\"device\"]}}\u0003");
+		String res = c1.receive();
+		assertTrue(res.contains("\"seq\"") && res.contains("\"state\""), res);
+		Terrarium terrarium = Terrarium.getInstance();
+		synchronized (terrarium) {
+			terrarium.setDeviceOn("fan_out", -1L);
+		}
+		String event = c1.receive();
+		assertTrue(event.startsWith("{\"event\":\"device\"") && event.contains("fan_out"), event);
+		// Responses still work on a subscribed connection
+		c1.send("{\"msgId\":\"00000000-0000-0000-0000-000000000003\",\"cmd\":\"unsubscribe\"}\u0003");
+		assertTrue(c1.receive().contains("00000000-0000-0000-0000-000000000003"));
+		synchronized (terrarium) {
+			terrarium.setDeviceOff("fan_out");
+		}
+		c1.send("{\"msgId\":\"00000000-0000-0000-0000-000000000004\",\"cmd\":\"getState\"}\u0003");
+		assertTrue(c1.receive().contains("00000000-0000-0000-0000-000000000004"), "No events after unsubscribe");
+	}
+
+	private void start() {
+		Thread t = new Thread(() -> {
+			try {
+				this.server.start();
+			} catch (IOException e) {
+			}
+		}, "BTServerTest");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	private static class FakeNotifier implements StreamConnectionNotifier {
+		private final BlockingQueue<FakeConnection> pending = new LinkedBlockingQueue<>();
+		private volatile boolean closed;
+
+		FakeConnection connect() {
+			FakeConnection c = new FakeConnection();
+			this.pending.add(c);
+			return c;
+		}
+
+		@Override
+		public StreamConnection acceptAndOpen() throws IOException {
+			try {
+				while (!this.closed) {
+					FakeConnection c = this.pending.poll(50, TimeUnit.MILLISECONDS);
+					if (c != null) {
+						return c;
+					}
+				}
+			} catch (InterruptedException e) {
+			}
+			throw new IOException("Notifier is closed");
+		}
+
+		@Override
+		public void close() {
+			this.closed = true;
+		}
+	}
+
+	private static class FakeConnection implements StreamConnection {
+		private final BlockingQueue<Integer> toServer = new LinkedBlockingQueue<>();
+		private final BlockingQueue<Integer> toClient = new LinkedBlockingQueue<>();
+		private volatile boolean closed;
+
+		void send(String s) {
+			for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+				this.toServer.add(b & 0xFF);
+			}
+		}
+
+		String receive() throws InterruptedException {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			Integer b;
+			while (((b = this.toClient.poll(5, TimeUnit.SECONDS)) != null) && (b != 0x03)) {
+				bos.write(b);
+			}
+			return bos.toString(StandardCharsets.UTF_8);
+		}
+
+		synchronized boolean awaitClosed(long millis) throws InterruptedException {
+			long end = System.currentTimeMillis() + millis;
+			while (!this.closed && (System.currentTimeMillis() < end)) {
+				wait(20);
+			}
+			return this.closed;
+		}
+
+		@Override
+		public InputStream openInputStream() {
+			return new InputStream() {
+				@Override
+				public int read() throws IOException {
+					try {
+						Integer b;
+						while ((b = FakeConnection.this.toServer.poll(20, TimeUnit.MILLISECONDS)) == null) {
+							if (FakeConnection.this.closed) {
+								throw new IOException("Connection closed");
+							}
+						}
+						return b;
+					} catch (InterruptedException e) {
+						throw new InterruptedIOException();
+					}
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					// Like a socket: wait for the first byte and return what is available
+					b[off] = (byte) read();
+					int n = 1;
+					Integer next;
+					while ((n < len) && ((next = FakeConnection.this.toServer.poll()) != null)) {
+						b[off + n++] = (byte) (int) next;
+					}
+					return n;
+				}
+			};
+		}
+
+		@Override
+		public DataInputStream openDataInputStream() {
+			return new DataInputStream(openInputStream());
+		}
+
+		@Override
+		public OutputStream openOutputStream() {
+			return new OutputStream() {
+				@Override
+				public void write(int b) {
+					FakeConnection.this.toClient.add(b & 0xFF);
+				}
+			};
+		}
+
+		@Override
+		public DataOutputStream openDataOutputStream() {
+			return new DataOutputStream(openOutputStream());
+		}
+
+		@Override
+		public synchronized void close() {
+			this.closed = true;
+			notifyAll();
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import nl.das.tcu.events.ChangeLog;
+import nl.das.tcu.objects.Terrarium;
+
+/**
+ *
+ */
+public class ChangeLogTest {
+
+	@BeforeAll
+	public static void beforeAll () throws IOException {
+		Terrarium.traceFolder = "src/test/resources/tracefiles";
+		Terrarium terrarium = Terrarium.getInstance(Files.readString(Paths.get("src/test/resources/settings.json")));
+		terrarium.setNow(LocalDateTime.now());
+		terrarium.initMockDevices();
+		terrarium.initDeviceState();
+		terrarium.initRules();
+	}
+
+	@Test
+	public void testChanges() {
+		ChangeLog log = new ChangeLog(4);
+		long start = log.getSeq();
+		assertEquals(0, log.since(start).getJsonArray("changes").size());
+		log.add("device", device("light1", "on"));
+		log.add("device", device("light2", "on"));
+		log.add("device", device("light1", "off"));
+		JsonObject res = log.since(start);
+		assertFalse(res.getBoolean("full"));
+		assertEquals(start + 3, res.getJsonNumber("seq").longValue());
+		JsonArray changes = res.getJsonArray("changes");
+		assertEquals(2, changes.size(), "Only the last change of light1");
+		assertEquals("light2", changes.getJsonObject(0).getJsonObject("data").getString("device"));
+		assertEquals("off", changes.getJsonObject(1).getJsonObject("data").getString("state"));
+		assertEquals(1, log.since(start + 2).getJsonArray("changes").size());
+	}
+
+	@Test
+	public void testEvicted() {
+		ChangeLog log = new ChangeLog(2);
+		long start = log.getSeq();
+		log.add("device", device("light1", "on"));
+		log.add("device", device("light1", "off"));
+		assertFalse(log.since(start).getBoolean("full"));
+		log.add("device", device("light1", "on"));
+		JsonObject res = log.since(start);
+		assertTrue(res.getBoolean("full"), "First change is not in the log anymore");
+		assertEquals(start + 3, res.getJsonNumber("seq").longValue());
+		assertEquals(12, res.getJsonObject("state").getJsonArray("state").size());
+		assertEquals(2, res.getJsonArray("rulesets").size());
+		assertTrue(log.since(-1L).getBoolean("full"));
+	}
+
+	@Test
+	public void testAwait() {
+		ChangeLog log = new ChangeLog(4);
+		AtomicInteger runs = new AtomicInteger();
+		assertTrue(log.await(log.getSeq(), runs::incrementAndGet));
+		assertFalse(log.await(log.getSeq() - 1, runs::incrementAndGet), "There already are changes");
+		log.add("trace", Json.createObjectBuilder().add("trace", "on").build());
+		log.add("trace", Json.createObjectBuilder().add("trace", "off").build());
+		assertEquals(1, runs.get(), "Run once on the next change");
+	}
+
+	private static JsonObject device(String device, String state) {
+		return Json.createObjectBuilder().add("device", device).add("state", state).build();
+	}
+}
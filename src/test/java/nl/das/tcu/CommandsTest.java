@@ -0,0 +1,206 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import nl.das.tcu.objects.Ruleset;
+import nl.das.tcu.objects.SprayerRule;
+import nl.das.tcu.objects.Terrarium;
+import nl.das.tcu.rest.BTServer;
+import nl.das.tcu.rest.Batch;
+
+/**
+ *
+ */
+public class CommandsTest {
+
+	private static Terrarium terrarium;
+
+	@BeforeAll
+	public static void beforeAll () throws IOException {
+		Terrarium.traceFolder = "src/test/resources/tracefiles";
+		terrarium = Terrarium.getInstance(Files.readString(Paths.get("src/test/resources/settings.json")));
+		terrarium.setNow(LocalDateTime.now());
+		terrarium.initMockDevices();
+		terrarium.initDeviceState();
+	}
+
+	@Test
+	public void testCommands() throws IOException {
+		JsonObject res = execute("{\"msgId\":\"00000000-0000-0000-0000-000000000001\",\"cmd\":\"setDeviceOnFor\",\"data\":{\"device\":\"pump\",\"period\":60}}");
+		assertEquals("00000000-0000-0000-0000-000000000001", res.getString("msgId"));
+		assertEquals("setDeviceOnFor", res.getString("command"));
+		assertEquals(0, res.getJsonObject("response").size());
+		assertTrue(terrarium.isDeviceOn("pump"));
+
+		res = execute("{\"cmd\":\"getTimersForDevice\",\"data\":{\"device\":\"pump\"}}");
+		assertEquals(3, res.getJsonObject("response").getJsonArray("timers").size());
+		res = execute("{\"cmd\":\"getRuleset\",\"data\":{\"rulesetnr\":2}}");
+		assertEquals(27, res.getJsonObject("response").getInt("temp_ideal"));
+	}
+
+	@Test
+	public void testRetry() throws IOException {
+		String setOn = "{\"msgId\":\"00000000-0000-0000-0000-000000000020\",\"cmd\":\"setDeviceOn\",\"data\":{\"device\":\"fan_in\"}}";
+		String first = executeRaw(setOn);
+		assertTrue(terrarium.isDeviceOn("fan_in"));
+		execute("{\"cmd\":\"setDeviceOff\",\"data\":{\"device\":\"fan_in\"}}");
+		// The retry gets the same response and is not executed again
+		assertEquals(first, executeRaw(setOn));
+		assertFalse(terrarium.isDeviceOn("fan_in"));
+		// but a new command is
+		execute("{\"msgId\":\"00000000-0000-0000-0000-000000000021\",\"cmd\":\"setDeviceOn\",\"data\":{\"device\":\"fan_in\"}}");
+		assertTrue(terrarium.isDeviceOn("fan_in"));
+		execute("{\"cmd\":\"setDeviceOff\",\"data\":{\"device\":\"fan_in\"}}");
+	}
+
+	@Test
+	public void testAtomicRetry() throws IOException {
+		String rule = JsonCodec.JSONB.toJson(terrarium.getSprayerRule());
+		String batch = "{\"atomic\":true,\"batch\":[{\"msgId\":\"00000000-0000-0000-0000-000000000030\",\"cmd\":\"setSprayerRule\",\"data\":" + rule + "},"
+				+ "{\"cmd\":\"getSprayerRule\"}]}";
+		JsonArray first = executeBatch(batch);
+		execute("{\"cmd\":\"setSprayerRule\",\"data\":" + rule + "}");
+		SprayerRule current = terrarium.getSprayerRule();
+		// The retry of the batch gets the same responses and the mutating command is not executed again
+		assertEquals(first.get(0), executeBatch(batch).get(0));
+		assertSame(current, terrarium.getSprayerRule());
+		// nor is it when it is sent on its own
+		execute("{\"msgId\":\"00000000-0000-0000-0000-000000000030\",\"cmd\":\"setSprayerRule\",\"data\":" + rule + "}");
+		assertSame(current, terrarium.getSprayerRule());
+	}
+
+	@Test
+	public void testErrors() throws IOException {
+		assertEquals("No data found.", error("{\"cmd\":\"setDeviceOn\"}"));
+		assertEquals("String parameter 'device' not found.", error("{\"cmd\":\"setDeviceOn\",\"data\":{}}"));
+		assertEquals("Device 'lamp' is unknown.", error("{\"cmd\":\"setDeviceOn\",\"data\":{\"device\":\"lamp\"}}"));
+		assertEquals("Integer parameter 'period' not found.", error("{\"cmd\":\"setDeviceOnFor\",\"data\":{\"device\":\"pump\",\"period\":\"60\"}}"));
+		assertEquals("Integer parameter 'period' must be >= 1 and <= 3600.", error("{\"cmd\":\"setDeviceOnFor\",\"data\":{\"device\":\"pump\",\"period\":3601}}"));
+		assertEquals("Integer parameter 'rulesetnr' must be >= 1 and <= 2.", error("{\"cmd\":\"getRuleset\",\"data\":{\"rulesetnr\":3}}"));
+		assertEquals("Command 'getNothing' is not implemented.", error("{\"cmd\":\"getNothing\"}"));
+		assertEquals("Command is not a valid JSON object.", error("{\"cmd\":\"getState\""));
+		assertEquals("String parameter 'res' must be one of 5m, 1h, 1d.",
+				error("{\"cmd\":\"getTemperatureRollup\",\"data\":{\"from\":\"2023-03-10 00:00:00\",\"res\":\"2w\"}}"));
+		assertEquals("String parameter 'from' must be a time as yyyy-MM-dd HH:mm:ss.",
+				error("{\"cmd\":\"getTemperatureRollup\",\"data\":{\"from\":\"yesterday\"}}"));
+		assertEquals("String parameter 'to' must be a time as yyyy-MM-dd HH:mm:ss.",
+				error("{\"cmd\":\"getTemperatureHistory\",\"data\":{\"from\":\"2023-03-10 00:00:00\",\"to\":\"2023-13-01 00:00:00\"}}"));
+		assertEquals("String parameter 'from' must be a time as yyyy-MM-dd HH:mm:ss.",
+				error("{\"cmd\":\"getStateHistory\",\"data\":{\"from\":\"10-03-2023\"}}"));
+	}
+
+	@Test
+	public void testStreamedResponses() throws IOException {
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			content.append("2026-10-18 12:00:00 \"sensors\"\tr=21 t=26 \u00b0C \\ \u0001\n");
+		}
+		Files.createDirectories(Paths.get(Terrarium.traceFolder));
+		Files.writeString(Paths.get(Terrarium.traceFolder, "temp_streamtest"), content.toString());
+		try {
+			JsonObject res = execute("{\"cmd\":\"getTemperatureFile\",\"data\":{\"fname\":\"temp_streamtest\"}}");
+			assertEquals(content.toString(), res.getJsonObject("response").getString("content"));
+		} finally {
+			Files.delete(Paths.get(Terrarium.traceFolder, "temp_streamtest"));
+		}
+		assertTrue(error("{\"cmd\":\"getTemperatureFile\",\"data\":{\"fname\":\"temp_streamtest\"}}").contains("NoSuchFileException"));
+
+		JsonObject res = execute("{\"cmd\":\"getState\"}");
+		assertEquals(terrarium.getStateSnapshot().getJson(), res.getJsonObject("response"));
+	}
+
+	@Test
+	public void testBatch() throws IOException {
+		JsonArray res = executeBatch("[{\"cmd\":\"getRuleset\",\"data\":{\"rulesetnr\":1}},{\"cmd\":\"getNothing\"},{\"cmd\":\"getSprayerRule\"}]");
+		assertEquals(3, res.size());
+		assertEquals("getRuleset", res.getJsonObject(0).getString("command"));
+		assertEquals("Command 'getNothing' is not implemented.", res.getJsonObject(1).getJsonObject("response").getString("error"));
+		assertTrue(res.getJsonObject(2).getJsonObject("response").containsKey("actions"));
+
+		// An atomic batch is checked before anything is executed
+		Ruleset ruleset = terrarium.getRuleset(1);
+		String rs = JsonCodec.JSONB.toJson(ruleset);
+		res = executeBatch("{\"atomic\":true,\"batch\":[{\"cmd\":\"saveRuleset\",\"data\":{\"rulesetnr\":1,\"ruleset\":" + rs + "}},"
+				+ "{\"cmd\":\"getRuleset\"}]}");
+		assertEquals("Batch is not executed, because command 2 failed.", res.getJsonObject(0).getJsonObject("response").getString("error"));
+		assertEquals("No data found.", res.getJsonObject(1).getJsonObject("response").getString("error"));
+		assertSame(ruleset, terrarium.getRuleset(1));
+
+		// Commands that cannot be undone or that read trace files are refused, so nothing is switched
+		res = executeBatch("{\"atomic\":true,\"batch\":[{\"cmd\":\"setDeviceOn\",\"data\":{\"device\":\"fan_in\"}},"
+				+ "{\"cmd\":\"replaceTimers\",\"data\":{\"timers\":[1]}}]}");
+		assertEquals("Command 'setDeviceOn' cannot be part of an atomic batch, because it cannot be undone.",
+				res.getJsonObject(0).getJsonObject("response").getString("error"));
+		assertEquals("Batch is not executed, because command 1 failed.", res.getJsonObject(1).getJsonObject("response").getString("error"));
+		assertFalse(terrarium.isDeviceOn("fan_in"));
+		res = executeBatch("{\"atomic\":true,\"batch\":[{\"cmd\":\"getTemperatureHistory\",\"data\":{\"from\":\"2023-03-10 00:00:00\"}}]}");
+		assertEquals("Command 'getTemperatureHistory' cannot be part of an atomic batch, because it reads trace files.",
+				res.getJsonObject(0).getJsonObject("response").getString("error"));
+
+		// and the settings are restored when a command fails
+		res = executeBatch("{\"atomic\":true,\"batch\":[{\"cmd\":\"saveRuleset\",\"data\":{\"rulesetnr\":1,\"ruleset\":" + rs + "}},"
+				+ "{\"cmd\":\"replaceTimers\",\"data\":{\"timers\":[1]}}]}");
+		assertEquals("JsonArray parameter 'timers' does not contain an array of Timer json objects.",
+				res.getJsonObject(1).getJsonObject("response").getString("error"));
+		assertSame(ruleset, terrarium.getRuleset(1));
+
+		res = executeBatch("{\"atomic\":true,\"batch\":[{\"cmd\":\"saveRuleset\",\"data\":{\"rulesetnr\":1,\"ruleset\":" + rs + "}},"
+				+ "{\"cmd\":\"getRuleset\",\"data\":{\"rulesetnr\":1}}]}");
+		assertEquals(0, res.getJsonObject(0).getJsonObject("response").size());
+		assertEquals(ruleset.getTemp_ideal(), res.getJsonObject(1).getJsonObject("response").getInt("temp_ideal"));
+		assertNotSame(ruleset, terrarium.getRuleset(1));
+
+		res = executeBatch("{\"batch\":[]}");
+		assertEquals("Batch must be an array of 1 to " + Batch.maxCommands + " commands.", res.getJsonObject(0).getJsonObject("response").getString("error"));
+	}
+
+	private static JsonArray executeBatch(String batch) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BTServer.handleCommand(batch, out);
+		byte[] b = out.toByteArray();
+		assertEquals(0x03, b[b.length - 1]);
+		return JsonCodec.parseValue(new String(b, 0, b.length - 1, StandardCharsets.UTF_8)).asJsonArray();
+	}
+
+	private static String error(String command) throws IOException {
+		return execute(command).getJsonObject("response").getString("error");
+	}
+
+	private static JsonObject execute(String command) throws IOException {
+		return JsonCodec.parseObject(executeRaw(command));
+	}
+
+	private static String executeRaw(String command) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BTServer.handleCommand(command, out);
+		byte[] b = out.toByteArray();
+		assertEquals(0x03, b[b.length - 1]);
+		return new String(b, 0, b.length - 1, StandardCharsets.UTF_8);
+	}
+}
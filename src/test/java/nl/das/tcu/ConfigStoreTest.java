@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import nl.das.tcu.objects.Terrarium;
+import nl.das.tcu.objects.Timer;
+import nl.das.tcu.store.ConfigStore;
+
+/**
+ *
+ */
+public class ConfigStoreTest {
+
+	private static Path settings = Paths.get("src/test/resources/settings_store.json");
+	private static Path journal = Paths.get("src/test/resources/settings_store.journal");
+
+	@BeforeAll
+	public static void beforeAll () throws IOException {
+		ConfigStore.debounceMillis = 60000L;
+		Files.copy(Paths.get("src/test/resources/settings.json"), settings, StandardCopyOption.REPLACE_EXISTING);
+		Files.deleteIfExists(journal);
+	}
+
+	@AfterAll
+	public static void afterAll () throws IOException {
+		ConfigStore.debounceMillis = 5000L;
+		Files.deleteIfExists(settings);
+		Files.deleteIfExists(journal);
+	}
+
+	@Test
+	public void testReplay() throws IOException {
+		Terrarium terrarium = Terrarium.getInstance(Files.readString(settings));
+		terrarium.openConfigStore(settings, journal);
+		String saved = Files.readString(settings);
+		Timer[] timers = terrarium.getTimersForDevice("pump");
+		timers[1] = new Timer("pump", 2, "10:30", "11:30", 1, 0);
+		terrarium.replaceTimers(timers);
+		timers[1] = new Timer("pump", 2, "10:45", "11:45", 1, 0);
+		terrarium.replaceTimers(timers);
+		assertEquals(saved, Files.readString(settings), "Changes are only journaled");
+		assertTrue(Files.size(journal) > 0);
+
+		// Restart
+		terrarium = Terrarium.getInstance(Files.readString(settings));
+		assertEquals(0, terrarium.getTimersForDevice("pump")[1].getHour_on(), "Not in settings.json yet");
+		terrarium.openConfigStore(settings, journal);
+		assertEquals(10, terrarium.getTimersForDevice("pump")[1].getHour_on());
+		assertEquals(45, terrarium.getTimersForDevice("pump")[1].getMinute_on());
+		assertEquals(0, Files.size(journal), "Replayed changes are saved in settings.json");
+		terrarium = Terrarium.getInstance(Files.readString(settings));
+		assertEquals(45, terrarium.getTimersForDevice("pump")[1].getMinute_on());
+	}
+
+	@Test
+	public void testBatch() throws IOException {
+		Terrarium terrarium = Terrarium.getInstance(Files.readString(settings));
+		terrarium.openConfigStore(settings, journal);
+		terrarium.beginSettingsBatch();
+		Timer[] timers = terrarium.getTimersForDevice("pump");
+		timers[2] = new Timer("pump", 3, "08:15", "08:20", 1, 0);
+		terrarium.replaceTimers(timers);
+		assertTrue(!Files.exists(journal) || (Files.size(journal) == 0), "Changes in a batch are not journaled");
+		terrarium.endSettingsBatch();
+		assertEquals(0, Files.size(journal));
+		terrarium = Terrarium.getInstance(Files.readString(settings));
+		assertEquals(15, terrarium.getTimersForDevice("pump")[2].getMinute_on(), "Saved in settings.json at the end of the batch");
+	}
+}
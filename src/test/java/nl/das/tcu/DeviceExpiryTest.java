@@ -0,0 +1,120 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import nl.das.tcu.events.EventBus;
+import nl.das.tcu.objects.Terrarium;
+
+/**
+ *
+ */
+public class DeviceExpiryTest {
+
+	private Terrarium terrarium;
+
+	@BeforeEach
+	public void before () throws IOException {
+		String json = Files.readString(Paths.get("src/test/resources/settings_misttest.json"));
+		this.terrarium = Terrarium.getInstance(json);
+		this.terrarium.setNow(LocalDateTime.now());
+		this.terrarium.initMockDevices();
+		this.terrarium.initDeviceState();
+		this.terrarium.initSensors(true);
+		this.terrarium.initRules();
+		this.terrarium.setTrace(false);
+	}
+
+	@Test
+	public void testDeadlines() {
+		LocalDateTime now = LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(8, 0, 0));
+		this.terrarium.setNow(now);
+		this.terrarium.setDeviceOn("light1", Util.now(now) + 60);
+		this.terrarium.setDeviceOn("pump", Util.now(now) + 30);
+		// Switched off and on again for a longer period before the first end time
+		this.terrarium.setDeviceOff("light1");
+		this.terrarium.setDeviceOn("light1", Util.now(now) + 120);
+		assertEquals(Util.now(now) + 30, this.terrarium.getDeadlines().next());
+
+		this.terrarium.setNow(now.plusSeconds(30));
+		this.terrarium.checkDevices();
+		assertFalse(this.terrarium.isDeviceOn("pump"));
+		assertTrue(this.terrarium.isDeviceOn("light1"));
+
+		this.terrarium.setNow(now.plusSeconds(60));
+		this.terrarium.checkDevices();
+		assertTrue(this.terrarium.isDeviceOn("light1"), "The old end time is ignored");
+		assertEquals(Util.now(now) + 120, this.terrarium.getDeadlines().next());
+
+		this.terrarium.setNow(now.plusSeconds(120));
+		this.terrarium.checkDevices();
+		assertFalse(this.terrarium.isDeviceOn("light1"));
+		assertEquals(0, this.terrarium.getDeadlines().size());
+	}
+
+	@Test
+	public void testExpiryTask() throws Exception {
+		Thread t = new Thread(new DeviceExpiryTask(), "DeviceExpiry");
+		CountDownLatch off = new CountDownLatch(1);
+		AtomicLong offAt = new AtomicLong();
+		EventBus.Listener listener = (type, data) -> {
+			if (type.equals(EventBus.DEVICE) && data.getString("device").equals("pump") && data.getString("state").equals("off")) {
+				offAt.set(System.currentTimeMillis());
+				off.countDown();
+			}
+		};
+		EventBus.subscribe(listener);
+		t.start();
+		try {
+			// Nothing to do: the thread waits without waking up
+			for (int i = 0; (i < 100) && (t.getState() != Thread.State.WAITING); i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(Thread.State.WAITING, t.getState());
+
+			long end;
+			synchronized (this.terrarium) {
+				LocalDateTime now = LocalDateTime.now();
+				this.terrarium.setNow(now);
+				end = Util.now(now) + 1;
+				this.terrarium.setDeviceOn("pump", end);
+			}
+			assertTrue(off.await(5, TimeUnit.SECONDS), "Switched off by the expiry thread");
+			assertFalse(isPumpOn());
+			assertTrue(offAt.get() >= (end * 1000L), "Not switched off before the end time");
+		} finally {
+			EventBus.unsubscribe(listener);
+			t.interrupt();
+			t.join(1000);
+		}
+	}
+
+	private boolean isPumpOn() {
+		synchronized (this.terrarium) {
+			return this.terrarium.isDeviceOn("pump");
+		}
+	}
+}
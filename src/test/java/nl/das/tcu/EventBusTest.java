@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import nl.das.tcu.events.EventBus;
+import nl.das.tcu.objects.Terrarium;
+
+/**
+ *
+ */
+public class EventBusTest {
+
+	private static Terrarium terrarium;
+	private List<String> events = new ArrayList<>();
+	private EventBus.Listener listener = (type, data) -> this.events.add(type + " " + data.toString());
+
+	@BeforeAll
+	public static void beforeAll () throws IOException {
+		Terrarium.traceFolder = "src/test/resources/tracefiles";
+		terrarium = Terrarium.getInstance(Files.readString(Paths.get("src/test/resources/settings.json")));
+		terrarium.setNow(LocalDateTime.now());
+		terrarium.initMockDevices();
+		terrarium.initDeviceState();
+		terrarium.initSensors(true);
+		terrarium.initRules();
+		terrarium.setTrace(false);
+	}
+
+	@BeforeEach
+	public void before () {
+		EventBus.subscribe(this.listener);
+	}
+
+	@AfterEach
+	public void after () {
+		EventBus.unsubscribe(this.listener);
+	}
+
+	@Test
+	public void testDeviceEvents() {
+		terrarium.setDeviceOn("light2", -1L);
+		terrarium.setDeviceOff("light2");
+		terrarium.setDeviceOff("light2");
+		assertEquals(2, this.events.size(), "Only changes are published");
+		assertEquals("device {\"device\":\"light2\",\"state\":\"on\",\"end_time\":\"no endtime\",\"hours_on\":0,\"manual\":\"no\"}", this.events.get(0));
+		assertEquals("device {\"device\":\"light2\",\"state\":\"off\",\"hours_on\":0,\"manual\":\"no\"}", this.events.get(1));
+	}
+
+	@Test
+	public void testRuleAndSensorEvents() {
+		terrarium.setRuleActive("fan_in", 0);
+		terrarium.setRuleActive("fan_in", 0);
+		terrarium.setRuleActive("fan_in", 1);
+		terrarium.setSensors(21, 26);
+		terrarium.readSensorValues();
+		assertEquals(3, this.events.size());
+		assertEquals("rule {\"device\":\"fan_in\",\"active\":0}", this.events.get(0));
+		assertEquals("rule {\"device\":\"fan_in\",\"active\":1}", this.events.get(1));
+		assertEquals(true, this.events.get(2).startsWith("sensors {\"time\":"));
+		assertEquals(true, this.events.get(2).endsWith("\"troom\":21,\"hroom\":0,\"tterr\":26}"));
+	}
+}
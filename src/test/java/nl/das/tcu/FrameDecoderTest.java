@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import nl.das.tcu.rest.FrameDecoder;
+import nl.das.tcu.rest.FrameDecoder.FrameException;
+
+/**
+ *
+ */
+public class FrameDecoderTest {
+
+	@Test
+	public void testFrames() throws IOException {
+		// Small buffer, so frames and characters are split over several reads
+		FrameDecoder fd = new FrameDecoder(stream("{\"cmd\":\"getState\"}\u0003{\"device\":\"lamp één\"}\u0003\u0003{\"cmd\""), 1024, 5);
+		assertEquals("{\"cmd\":\"getState\"}", fd.next());
+		assertEquals("{\"device\":\"lamp één\"}", fd.next());
+		assertEquals("", fd.next());
+		assertNull(fd.next(), "Incomplete last frame is dropped");
+		assertNull(fd.next());
+	}
+
+	@Test
+	public void testTooLarge() throws IOException {
+		FrameDecoder fd = new FrameDecoder(stream("0123456789\u0003012345678901234567890123456789\u0003ok\u0003"), 10, 8);
+		assertEquals("0123456789", fd.next());
+		assertThrows(FrameException.class, fd::next);
+		assertEquals("ok", fd.next(), "Next frame can still be read");
+	}
+
+	@Test
+	public void testInvalidUtf8() throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		bos.write(new byte[] { 'a', (byte) 0xC3, 'b', 0x03, 'c', 0x03 });
+		FrameDecoder fd = new FrameDecoder(new ByteArrayInputStream(bos.toByteArray()), 100);
+		assertThrows(FrameException.class, fd::next);
+		assertEquals("c", fd.next());
+	}
+
+	private static ByteArrayInputStream stream(String s) {
+		return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+	}
+}
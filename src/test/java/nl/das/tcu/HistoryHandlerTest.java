@@ -0,0 +1,204 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import io.undertow.Handlers;
+import io.undertow.Undertow;
+import io.undertow.server.handlers.BlockingHandler;
+import nl.das.tcu.objects.Terrarium;
+import nl.das.tcu.rest.handlers.HistoryHandler;
+import nl.das.tcu.trace.TraceCompactor;
+
+/**
+ *
+ */
+public class HistoryHandlerTest {
+
+	private static String folder = "src/test/resources/historyhandler";
+	private static String savedFolder;
+	private static Undertow server;
+	private static int port;
+	private static String day1;
+	private static String day2;
+	private static String day0;
+
+	static class Response {
+		int status;
+		Map<String, List<String>> headers;
+		byte[] body;
+
+		String header(String name) {
+			for (Map.Entry<String, List<String>> h : this.headers.entrySet()) {
+				if ((h.getKey() != null) && h.getKey().equalsIgnoreCase(name)) {
+					return h.getValue().get(0);
+				}
+			}
+			return null;
+		}
+
+		String text() {
+			return new String(this.body, StandardCharsets.UTF_8);
+		}
+	}
+
+	@BeforeAll
+	public static void beforeAll () throws IOException {
+		savedFolder = Terrarium.traceFolder;
+		Terrarium.traceFolder = folder;
+		Files.createDirectories(Paths.get(folder));
+		day1 = lines("2023-03-09", 1200);
+		day2 = lines("2023-03-10", 1200);
+		Files.write(Paths.get(folder, "temp_20230309"), day1.getBytes(StandardCharsets.UTF_8));
+		Files.write(Paths.get(folder, "temp_20230310"), day2.getBytes(StandardCharsets.UTF_8));
+		// A day that has been compressed by the TraceCompactor
+		day0 = lines("2023-03-08", 1200);
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(TraceCompactor.compressed(Paths.get(folder, "temp_20230308"))))) {
+			out.write(day0.getBytes(StandardCharsets.UTF_8));
+		}
+		server = Undertow.builder()
+				.addHttpListener(0, "localhost")
+				.setHandler(Handlers.path().addPrefixPath("/", Handlers.routing()
+						.get("history/temperature", new BlockingHandler(new HistoryHandler()))
+						.get("history/temperature/rollup", new BlockingHandler(new HistoryHandler()))
+						.get("history/temperature/{fname}", new BlockingHandler(new HistoryHandler()))))
+				.build();
+		server.start();
+		port = ((InetSocketAddress) server.getListenerInfo().get(0).getAddress()).getPort();
+	}
+
+	@AfterAll
+	public static void afterAll () throws IOException {
+		server.stop();
+		Terrarium.traceFolder = savedFolder;
+		for (Path p : Files.list(Paths.get(folder)).toArray(Path[]::new)) {
+			Files.delete(p);
+		}
+		Files.delete(Paths.get(folder));
+	}
+
+	private static String lines(String date, int n) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			sb.append(String.format("%s %02d:%02d:%02d r=21 t=\"26\"\n", date, (i / 60) % 24, i % 60, i % 60));
+		}
+		return sb.toString();
+	}
+
+	static Response get(String path, String... headers) throws IOException {
+		HttpURLConnection con = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+		for (int i = 0; i < headers.length; i += 2) {
+			con.setRequestProperty(headers[i], headers[i + 1]);
+		}
+		Response r = new Response();
+		r.status = con.getResponseCode();
+		r.headers = con.getHeaderFields();
+		InputStream in = r.status >= 400 ? con.getErrorStream() : con.getInputStream();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if (in != null) {
+			in.transferTo(out);
+			in.close();
+		}
+		r.body = out.toByteArray();
+		con.disconnect();
+		return r;
+	}
+
+	@Test
+	public void testWindow() throws Exception {
+		Response r = get("/history/temperature?from=2023-03-10%2001:00:00&to=2023-03-10%2002:59:59");
+		assertEquals(200, r.status);
+		JsonObject json = Json.createReader(new StringReader(r.text())).readObject();
+		StringBuilder expected = new StringBuilder();
+		for (String ln : day2.split("\n")) {
+			String hh = ln.substring(11, 13);
+			if (hh.equals("01") || hh.equals("02")) {
+				expected.append(ln).append('\n');
+			}
+		}
+		assertEquals(expected.toString(), json.getString("content"));
+	}
+
+	@Test
+	public void testRollupResolution() throws Exception {
+		Response r = get("/history/temperature/rollup");
+		assertEquals(200, r.status);
+		assertEquals("1h", Json.createReader(new StringReader(r.text())).readObject().getString("res"));
+		r = get("/history/temperature/rollup?res=5m");
+		assertEquals(200, r.status);
+		assertEquals("5m", Json.createReader(new StringReader(r.text())).readObject().getString("res"));
+		r = get("/history/temperature/rollup?res=2w");
+		assertEquals(400, r.status);
+	}
+
+	@Test
+	public void testCompressedDay() throws Exception {
+		String path = "/history/temperature/temp_20230308?format=raw";
+		byte[] content = day0.getBytes(StandardCharsets.UTF_8);
+
+		// Decompressed for a client that does not accept gzip, with validators
+		Response r = get(path);
+		assertEquals(200, r.status);
+		assertEquals(day0, r.text());
+		String etag = r.header("ETag");
+		assertNotNull(etag);
+		assertNotNull(r.header("Last-Modified"));
+		assertEquals(304, get(path, "If-None-Match", etag).status);
+		assertEquals(304, get(path, "If-Modified-Since", r.header("Last-Modified")).status);
+
+		// Range of the uncompressed content, also when the client accepts gzip
+		r = get(path, "Range", "bytes=100-199", "Accept-Encoding", "gzip");
+		assertEquals(206, r.status);
+		assertEquals("bytes 100-199/" + content.length, r.header("Content-Range"));
+		assertArrayEquals(Arrays.copyOfRange(content, 100, 200), r.body);
+		r = get(path, "Range", "bytes=-50");
+		assertEquals(206, r.status);
+		assertArrayEquals(Arrays.copyOfRange(content, content.length - 50, content.length), r.body);
+		assertEquals(416, get(path, "Range", "bytes=" + (content.length + 10) + "-").status);
+
+		// The whole file as it is stored for a client that accepts gzip
+		r = get(path, "Accept-Encoding", "gzip");
+		assertEquals(200, r.status);
+		assertEquals("gzip", r.header("Content-Encoding"));
+		assertEquals(etag, r.header("ETag"));
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(r.body))) {
+			assertArrayEquals(content, in.readAllBytes());
+		}
+	}
+}
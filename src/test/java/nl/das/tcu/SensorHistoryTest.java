@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+
+import nl.das.tcu.objects.SensorHistory;
+
+/**
+ *
+ */
+public class SensorHistoryTest {
+
+	@Test
+	public void testRecent() {
+		SensorHistory sh = new SensorHistory(100);
+		assertEquals(0, sh.getRecent(60).getJsonArray("time").size());
+		LocalDateTime start = LocalDateTime.of(2023, 3, 10, 16, 0, 4);
+		for (int m = 0; m < 30; m++) {
+			sh.add(start.plusMinutes(m), 21, 50, m);
+		}
+		JsonObject recent = sh.getRecent(10);
+		assertEquals(10, recent.getJsonArray("tterr").size());
+		assertEquals(20, recent.getJsonArray("tterr").getInt(0), "Oldest first");
+		assertEquals(29, recent.getJsonArray("tterr").getInt(9));
+		assertEquals(start.plusMinutes(29).atZone(ZoneId.systemDefault()).toEpochSecond(), recent.getJsonArray("time").getJsonNumber(9).longValue());
+		assertEquals(50, recent.getJsonArray("hroom").getInt(0));
+	}
+
+	@Test
+	public void testWrapAround() {
+		SensorHistory sh = new SensorHistory(100);
+		LocalDateTime start = LocalDateTime.of(2023, 3, 10, 16, 0, 4);
+		for (int m = 0; m < 250; m++) {
+			sh.add(start.plusMinutes(m), 21, 50, m % 1000);
+		}
+		assertEquals(100, sh.size());
+		JsonObject recent = sh.getRecent(24 * 60);
+		assertEquals(100, recent.getJsonArray("tterr").size(), "Only the last 100 samples are kept");
+		assertEquals(150, recent.getJsonArray("tterr").getInt(0));
+		assertEquals(249, recent.getJsonArray("tterr").getInt(99));
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import nl.das.tcu.hw.SensorSampler;
+import nl.das.tcu.hw.SensorSampler.Sample;
+import nl.das.tcu.objects.Sensors;
+
+/**
+ *
+ */
+public class SensorSamplerTest {
+
+	private SensorSampler sampler;
+
+	@AfterEach
+	public void after () {
+		if (this.sampler != null) {
+			this.sampler.stop();
+		}
+		SensorSampler.periodMillis = 30000L;
+		SensorSampler.maxAgeMillis = 120000L;
+	}
+
+	@Test
+	public void testSample() throws Exception {
+		AtomicInteger reads = new AtomicInteger();
+		// Each sensor waits until the other one is being read as well
+		CountDownLatch reading = new CountDownLatch(2);
+		AtomicInteger together = new AtomicInteger();
+		this.sampler = new SensorSampler(() -> {
+			reading.countDown();
+			if (reading.await(5, TimeUnit.SECONDS)) {
+				together.incrementAndGet();
+			}
+			reads.incrementAndGet();
+			return new double[] { 21.4, 55.6 };
+		}, () -> {
+			reading.countDown();
+			try {
+				if (reading.await(5, TimeUnit.SECONDS)) {
+					together.incrementAndGet();
+				}
+			} catch (InterruptedException e) {
+			}
+			return 26.5;
+		});
+		this.sampler.start();
+		Sample s = this.sampler.sample();
+		assertEquals(2, together.get(), "Both sensors are read at the same time");
+		assertEquals(21, s.getRoomTemperature());
+		assertEquals(56, s.getRoomHumidity());
+		assertEquals(27, s.getTerrariumTemperature());
+
+		// Readers get the last sample without reading the sensors
+		for (int i = 0; i < 1000; i++) {
+			assertSame(s, this.sampler.get());
+		}
+		assertEquals(1, reads.get());
+
+		// A sample that is too old is replaced in the background
+		SensorSampler.maxAgeMillis = -1L;
+		this.sampler.get();
+		for (int i = 0; (i < 250) && (this.sampler.get() == s); i++) {
+			Thread.sleep(20);
+		}
+		assertNotSame(s, this.sampler.get());
+	}
+
+	@Test
+	public void testRoomSensorFails() throws Exception {
+		AtomicInteger reads = new AtomicInteger();
+		this.sampler = new SensorSampler(() -> {
+			reads.incrementAndGet();
+			throw new IOException("No response from DHT22");
+		}, () -> 25.0);
+		this.sampler.start();
+		Sample s = this.sampler.sample();
+		assertEquals(0, s.getRoomTemperature());
+		assertEquals(25, s.getTerrariumTemperature());
+		this.sampler.sample();
+		assertEquals(1, reads.get(), "A failed room sensor is not read anymore");
+	}
+
+	@Test
+	public void testSensorsTime() {
+		long time = LocalDateTime.of(2023, 3, 8, 19, 18, 47).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		Sensors sensors = new Sensors(new Sample(time, 21, 45, 26));
+		assertEquals("08-03-2023 19:18:47", sensors.getSampled());
+		assertEquals(26, sensors.getTerrariumTemp());
+		assertNull(new Sensors(new Sample(0L, 0, 0, 0)).getSampled(), "Not read yet");
+	}
+}
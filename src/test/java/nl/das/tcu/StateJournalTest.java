@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import nl.das.tcu.objects.Terrarium;
+import nl.das.tcu.objects.Timer;
+import nl.das.tcu.store.StateJournal;
+import nl.das.tcu.store.StateJournal.State;
+
+/**
+ *
+ */
+public class StateJournalTest {
+
+	private static Path journal = Paths.get("src/test/resources/state_test.journal");
+	private static Path snapshot = Paths.get("src/test/resources/state_test.snapshot");
+
+	@BeforeEach
+	public void before () throws IOException {
+		after();
+	}
+
+	@AfterEach
+	public void after () throws IOException {
+		StateJournal.maxRecords = 1000;
+		Files.deleteIfExists(journal);
+		Files.deleteIfExists(snapshot);
+	}
+
+	@Test
+	public void testReplay() throws IOException {
+		assertNull(StateJournal.load(journal, snapshot, 4), "Nothing to restore");
+		StateJournal sj = new StateJournal(journal, snapshot, new State(4));
+		sj.record(StateJournal.ON_PERIOD, 1, 1678464000L);
+		sj.record(StateJournal.ON_PERIOD, 2, -1L);
+		sj.record(StateJournal.MANUAL, 2, 1);
+		sj.record(StateJournal.RULE_ACTIVE, 3, 1);
+		sj.record(StateJournal.SPRAYER_RULE_ACTIVE, 0, 1);
+		sj.record(StateJournal.SPRAYER_RULE_DELAY, 0, 1000);
+		sj.record(StateJournal.ON_PERIOD, 2, 0L);
+		sj.record(StateJournal.ON_PERIOD, 2, 0L);
+		// No close: restart after a power failure
+		assertEquals(7 * 14, Files.size(journal), "Records that do not change the state are not written");
+		State s = StateJournal.load(journal, snapshot, 4);
+		assertEquals(1678464000L, s.onPeriod[1]);
+		assertEquals(0L, s.onPeriod[2]);
+		assertTrue(s.manual[2]);
+		assertEquals(1, s.ruleActive[3]);
+		assertTrue(s.sprayerRuleActive);
+		assertEquals(1000L, s.sprayerRuleDelayEndtime);
+		assertNull(StateJournal.load(journal, snapshot, 5), "Other number of devices");
+		sj.close();
+	}
+
+	@Test
+	public void testTornRecord() throws IOException {
+		StateJournal sj = new StateJournal(journal, snapshot, new State(2));
+		sj.record(StateJournal.ON_PERIOD, 0, -1L);
+		sj.record(StateJournal.ON_PERIOD, 1, -2L);
+		sj.close();
+		// Last record only half written and a record with a bad checksum
+		byte[] data = Files.readAllBytes(journal);
+		data[14 + 5] ^= 0x01;
+		Files.write(journal, data);
+		Files.write(journal, new byte[] { 1, 0, 0, 0 }, StandardOpenOption.APPEND);
+		State s = StateJournal.load(journal, snapshot, 2);
+		assertEquals(-1L, s.onPeriod[0]);
+		assertEquals(0L, s.onPeriod[1], "Corrupt record is not replayed");
+	}
+
+	@Test
+	public void testSnapshot() throws IOException {
+		StateJournal.maxRecords = 3;
+		StateJournal sj = new StateJournal(journal, snapshot, new State(2));
+		for (int i = 1; i <= 10; i++) {
+			sj.record(StateJournal.ON_PERIOD, i % 2, i);
+		}
+		// Written in the background, close waits for it
+		sj.close();
+		assertTrue(Files.size(journal) < (10 * 14), "Journal has been emptied");
+		State s = StateJournal.load(journal, snapshot, 2);
+		assertEquals(10L, s.onPeriod[0]);
+		assertEquals(9L, s.onPeriod[1]);
+		assertFalse(s.manual[0]);
+	}
+
+	@Test
+	public void testRestoreThenTimers() throws IOException {
+		Terrarium terrarium = Terrarium.getInstance(Files.readString(Paths.get("src/test/resources/settings_misttest.json")));
+		terrarium.setNow(LocalDateTime.now());
+		terrarium.initMockDevices();
+		terrarium.initDeviceState();
+		terrarium.initSensors(true);
+		terrarium.initRules();
+		terrarium.setTrace(false);
+		terrarium.replaceTimers(new Timer[] {
+			new Timer("light1", 1, "09:00", "10:00", 1, 0),
+			new Timer("light2", 1, "09:00", "10:00", 1, 0),
+			new Timer("light3", 1, "09:00", "10:00", 1, 0)
+		});
+		LocalDateTime day = LocalDateTime.of(2023, 3, 10, 0, 0);
+		terrarium.restoreDeviceState(journal, snapshot);
+		terrarium.setNow(day.withHour(9).withMinute(30));
+		terrarium.initTimers(day.withHour(9).withMinute(30));
+		assertTrue(terrarium.isDeviceOn("light1"));
+		terrarium.setDeviceManualOn("light2");
+		terrarium.setDeviceOn("light2", -1L);
+
+		// Restart at 11:00: the timers switched light1 and light3 off during the downtime, light2 is manual
+		terrarium.initDeviceState();
+		assertTrue(terrarium.restoreDeviceState(journal, snapshot));
+		assertTrue(terrarium.isDeviceOn("light1"));
+		terrarium.setNow(day.withHour(11));
+		terrarium.initTimers(day.withHour(11));
+		assertFalse(terrarium.isDeviceOn("light1"));
+		assertTrue(terrarium.isDeviceOn("light2"));
+		assertFalse(terrarium.isDeviceOn("light3"));
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import nl.das.tcu.objects.StateSnapshot;
+import nl.das.tcu.objects.Terrarium;
+
+/**
+ *
+ */
+public class StateSnapshotTest {
+
+	private static Terrarium terrarium;
+
+	@BeforeAll
+	public static void beforeAll () throws IOException {
+		Terrarium.traceFolder = "src/test/resources/tracefiles";
+		terrarium = Terrarium.getInstance(Files.readString(Paths.get("src/test/resources/settings.json")));
+		terrarium.setNow(LocalDateTime.now());
+		terrarium.initMockDevices();
+		terrarium.initDeviceState();
+		terrarium.setTrace(false);
+	}
+
+	@Test
+	public void testSnapshot() {
+		StateSnapshot s1 = terrarium.getStateSnapshot();
+		assertSame(s1, terrarium.getStateSnapshot(), "Nothing changed, so not built again");
+		assertEquals(s1.getText(), terrarium.getState());
+
+		terrarium.setDeviceOn("light1", -1L);
+		StateSnapshot s2 = terrarium.getStateSnapshot();
+		assertNotEquals(s1.getETag(), s2.getETag());
+		JsonObject light1 = s2.getJson().getJsonArray("state").getJsonObject(0);
+		assertEquals("light1", light1.getString("device"));
+		assertEquals("on", light1.getString("state"));
+		assertEquals("no endtime", light1.getString("end_time"));
+		assertEquals("off", s2.getJson().getString("trace"));
+
+		terrarium.setDeviceOff("light1");
+		assertEquals("off", terrarium.getStateSnapshot().getJson().getJsonArray("state").getJsonObject(0).getString("state"));
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import nl.das.tcu.trace.TemperatureRollup;
+import nl.das.tcu.trace.TemperatureRollup.Bucket;
+import nl.das.tcu.trace.TemperatureRollup.Resolution;
+
+/**
+ *
+ */
+public class TemperatureRollupTest {
+
+	private static String folder = "src/test/resources/rollup";
+
+	@BeforeAll
+	public static void beforeAll () throws IOException {
+		Files.createDirectories(Paths.get(folder));
+		// Two days of samples from 2023-03-10 00:00, the terrarium temperature goes 0..59 each hour
+		LocalDateTime start = LocalDateTime.of(2023, 3, 10, 0, 0, 4);
+		for (int m = 0; m < 2 * 1440; m++) {
+			TemperatureRollup.of(folder).add(start.plusMinutes(m), 20, m % 60);
+		}
+	}
+
+	@AfterAll
+	public static void afterAll () throws IOException {
+		for (Path p : Files.list(Paths.get(folder)).toArray(Path[]::new)) {
+			Files.deleteIfExists(p);
+		}
+		Files.deleteIfExists(Paths.get(folder));
+	}
+
+	@Test
+	public void testFiles() throws IOException {
+		assertEquals(2 * 288 * 24, Files.size(TemperatureRollup.file(Paths.get(folder), Resolution.M5)));
+		assertEquals(2 * 24 * 24, Files.size(TemperatureRollup.file(Paths.get(folder), Resolution.H1)));
+		assertEquals(2 * 24, Files.size(TemperatureRollup.file(Paths.get(folder), Resolution.D1)));
+	}
+
+	@Test
+	public void testHours() throws IOException {
+		List<Bucket> buckets = TemperatureRollup.of(folder).query(Resolution.H1,
+				LocalDateTime.of(2023, 3, 10, 16, 30), LocalDateTime.of(2023, 3, 10, 18, 0));
+		assertEquals(3, buckets.size(), "16:00, 17:00 and 18:00");
+		Bucket b = buckets.get(0);
+		assertEquals(LocalDateTime.of(2023, 3, 10, 16, 0), b.getTime());
+		assertEquals(60, b.getCount());
+		assertEquals(0, b.getTerrariumMin());
+		assertEquals(59, b.getTerrariumMax());
+		assertEquals(29.5, b.getTerrariumAvg());
+		assertEquals(20.0, b.getRoomAvg());
+	}
+
+	@Test
+	public void testFiveMinutesAndDays() throws IOException {
+		List<Bucket> buckets = TemperatureRollup.of(folder).query(Resolution.M5,
+				LocalDateTime.of(2023, 3, 11, 10, 10), LocalDateTime.of(2023, 3, 11, 10, 14));
+		assertEquals(1, buckets.size());
+		assertEquals(5, buckets.get(0).getCount());
+		assertEquals(10, buckets.get(0).getTerrariumMin());
+		assertEquals(14, buckets.get(0).getTerrariumMax());
+		buckets = TemperatureRollup.of(folder).query(Resolution.D1,
+				LocalDateTime.of(2023, 3, 1, 0, 0), LocalDateTime.of(2023, 4, 1, 0, 0));
+		assertEquals(2, buckets.size());
+		assertEquals(1440, buckets.get(1).getCount());
+		assertEquals(LocalDateTime.of(2023, 3, 11, 0, 0), buckets.get(1).getTime());
+	}
+}
@@ -114,6 +114,7 @@ public class TerrariumTest {
 
 		terrarium.decreaseLifetime(2);
 		assertEquals(terrarium.getDevStates()[terrarium.getDeviceIndex("uvlight")].getLifetime(), 4398);
+		terrarium.saveLifecycleCounters();
 		// Retrieve the lifecycle values again from disk
 		try {
 			String lcdata = Files.readString(Paths.get("lifecycle.txt"));
@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ */
+public class TickerTest {
+
+	@Test
+	public void testCatchUp() {
+		AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+		List<LocalDateTime> times = new CopyOnWriteArrayList<>();
+		Ticker ticker = new Ticker("test", 60000L, 2, times::add, clock::get);
+
+		// Too early: nothing happens
+		ticker.tick();
+		assertEquals(0, times.size());
+
+		// First tick is on the whole minute
+		LocalDateTime first = LocalDateTime.now().withSecond(0).withNano(0).plusMinutes(1);
+		clock.set(clock.get() + 60000L);
+		ticker.tick();
+		assertEquals(1, times.size());
+		assertEquals(0, ticker.getMissed());
+		LocalDateTime t1 = times.get(0);
+		assertEquals(0, t1.getSecond());
+		assertEquals(0, t1.getNano());
+		assertTrue(!t1.isBefore(first.minusMinutes(1)) && !t1.isAfter(first));
+
+		// Four ticks missed: the last two are caught up with their own time
+		clock.set(clock.get() + (5 * 60000L));
+		ticker.tick();
+		assertEquals(4, times.size());
+		assertEquals(t1.plusMinutes(3), times.get(1));
+		assertEquals(t1.plusMinutes(4), times.get(2));
+		assertEquals(t1.plusMinutes(5), times.get(3));
+		assertEquals(4, ticker.getMissed());
+		assertEquals(2, ticker.getCaughtUp());
+		assertEquals(2, ticker.getTicks());
+
+		// Clock set back two hours: aligned to the clock again
+		clock.set(clock.get() - (2 * 3600000L));
+		ticker.tick();
+		assertEquals(4, times.size());
+		clock.set(clock.get() + 60000L);
+		ticker.tick();
+		assertEquals(5, times.size());
+		assertEquals(t1.plusMinutes(6).minusHours(2), times.get(4));
+		assertEquals(4, ticker.getMissed());
+	}
+
+	@Test
+	public void testSlowTickerDoesNotDelayOthers() throws Exception {
+		List<LocalDateTime> times = new CopyOnWriteArrayList<>();
+		CountDownLatch fastTicks = new CountDownLatch(5);
+		CountDownLatch slowStarted = new CountDownLatch(1);
+		CountDownLatch slowRelease = new CountDownLatch(1);
+		CountDownLatch slowTicks = new CountDownLatch(2);
+		Ticker fast = new Ticker("fast", 100L, 0, t -> {
+			times.add(t);
+			fastTicks.countDown();
+		});
+		// The first run of the slow ticker hangs until it is released
+		Ticker slow = new Ticker("slow", 100L, 0, t -> {
+			slowStarted.countDown();
+			try {
+				slowRelease.await();
+			} catch (InterruptedException e) {
+			}
+			slowTicks.countDown();
+		});
+		slow.start();
+		try {
+			assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+			fast.start();
+			assertTrue(fastTicks.await(5, TimeUnit.SECONDS), "The fast ticker ticks while the slow one hangs: " + fast.getStats());
+			slowRelease.countDown();
+			assertTrue(slowTicks.await(5, TimeUnit.SECONDS));
+		} finally {
+			slowRelease.countDown();
+			fast.stop();
+			slow.stop();
+		}
+		assertTrue(slow.getMissed() > 0, slow.getStats());
+		for (LocalDateTime t : times) {
+			assertEquals(0, (t.getNano() / 1000000) % 100);
+		}
+	}
+}
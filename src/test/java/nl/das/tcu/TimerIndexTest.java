@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+import org.junit.jupiter.api.Test;
+
+import nl.das.tcu.objects.Terrarium;
+import nl.das.tcu.objects.Timer;
+import nl.das.tcu.objects.TimerIndex;
+
+/**
+ *
+ */
+public class TimerIndexTest {
+
+	@Test
+	public void testIndex() {
+		Timer[] timers = {
+			new Timer("light1", 1, "09:00", "21:00", 1, 0),
+			new Timer("pump", 1, "09:00", "00:00", 1, 30),
+			new Timer("pump", 2, "10:00", "10:00", 1, 0),
+			new Timer("mist", 1, "09:00", "21:00", 0, 0),
+			null
+		};
+		TimerIndex ix = new TimerIndex(timers);
+		assertEquals(4, ix.size());
+		TimerIndex.Event[] at9 = ix.at(9 * 60);
+		assertEquals(2, at9.length);
+		assertEquals(TimerIndex.ON, at9[0].getType());
+		assertSame(timers[0], at9[0].getTimer());
+		assertEquals(TimerIndex.PERIOD, at9[1].getType());
+		assertEquals(TimerIndex.OFF, ix.at(21 * 60)[0].getType());
+		// Same on and off time: only switched on
+		assertEquals(1, ix.at(10 * 60).length);
+		assertEquals(TimerIndex.ON, ix.at(10 * 60)[0].getType());
+		assertEquals(0, ix.at(0).length);
+	}
+
+	@Test
+	public void testReplaceTimers() throws IOException {
+		String json = Files.readString(Paths.get("src/test/resources/settings_misttest.json"));
+		Terrarium terrarium = Terrarium.getInstance(json);
+		terrarium.setNow(LocalDateTime.now());
+		terrarium.initMockDevices();
+		terrarium.initDeviceState();
+		terrarium.initSensors(true);
+		terrarium.initRules();
+		terrarium.setTrace(false);
+		terrarium.setSensors(21, 26);
+
+		TimerIndex before = Terrarium.cfg.getTimerIndex();
+		assertSame(before, Terrarium.cfg.getTimerIndex());
+		terrarium.replaceTimers(new Timer[] { new Timer("light1", 1, "03:17", "03:18", 1, 0) });
+		TimerIndex after = Terrarium.cfg.getTimerIndex();
+		assertNotSame(before, after);
+		assertEquals(1, after.at((3 * 60) + 17).length);
+
+		terrarium.setNow(LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(3, 17, 0)));
+		terrarium.checkTimers();
+		assertTrue(terrarium.isDeviceOn("light1"));
+		terrarium.setNow(LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(3, 18, 0)));
+		terrarium.checkTimers();
+		assertFalse(terrarium.isDeviceOn("light1"));
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import nl.das.tcu.trace.TraceCompactor;
+import nl.das.tcu.trace.TraceFiles;
+import nl.das.tcu.trace.TraceReader;
+import nl.das.tcu.trace.TraceWriter;
+
+/**
+ *
+ */
+public class TraceCompactorTest {
+
+	private static String folder = "src/test/resources/tracecompact";
+	private static DateTimeFormatter dtfmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+	@BeforeAll
+	public static void beforeAll () throws IOException {
+		Files.createDirectories(Paths.get(folder));
+		// Three days of state trace with one line per hour
+		LocalDateTime start = LocalDateTime.of(2023, 3, 10, 0, 0, 0);
+		for (int day = 0; day < 3; day++) {
+			LocalDateTime t = start.plusDays(day);
+			Path p = Paths.get(folder, TraceFiles.of(folder).rotate("state_", t, 5));
+			TraceWriter.state().rotate();
+			for (int h = 0; h < 24; h++) {
+				TraceWriter.state().append(p, t.plusHours(h).format(dtfmt) + " light1 1\n");
+			}
+		}
+		TraceWriter.state().flush();
+		TraceCompactor.compact(folder, "state_");
+	}
+
+	@AfterAll
+	public static void afterAll () throws IOException {
+		for (Path p : Files.list(Paths.get(folder)).toArray(Path[]::new)) {
+			Files.deleteIfExists(p);
+		}
+		Files.deleteIfExists(Paths.get(folder));
+	}
+
+	@Test
+	public void testCompressed() throws IOException {
+		assertFalse(Files.exists(Paths.get(folder, "state_20230310")));
+		assertTrue(Files.exists(Paths.get(folder, "state_20230310.gz")));
+		assertTrue(Files.exists(Paths.get(folder, "state_20230311.gz")));
+		assertTrue(Files.exists(Paths.get(folder, "state_20230312")), "The newest file is not compressed");
+		List<String> files = TraceFiles.of(folder).list("state_");
+		assertEquals(List.of("state_20230310", "state_20230311", "state_20230312"), files);
+	}
+
+	@Test
+	public void testRead() throws IOException {
+		String[] lines = TraceFiles.readString(Paths.get(folder, "state_20230311")).split("\n");
+		assertEquals(24, lines.length);
+		assertEquals("2023-03-11 00:00:00 light1 1", lines[0]);
+		StringBuilder sb = new StringBuilder();
+		TraceReader.copyRange(folder, "state_", TraceReader.parseTime("2023-03-11T22:00"), TraceReader.parseTime("2023-03-12T01:00"), sb);
+		lines = sb.toString().split("\n");
+		assertEquals(4, lines.length, "Lines from a compressed and an uncompressed file");
+		assertEquals("2023-03-11 22:00:00 light1 1", lines[0]);
+		assertEquals("2023-03-12 01:00:00 light1 1", lines[3]);
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import nl.das.tcu.trace.TraceFiles;
+import nl.das.tcu.trace.TraceIndex;
+import nl.das.tcu.trace.TraceReader;
+import nl.das.tcu.trace.TraceWriter;
+
+/**
+ *
+ */
+public class TraceRangeTest {
+
+	private static String folder = "src/test/resources/tracerange";
+	private static DateTimeFormatter dtfmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+	@BeforeAll
+	public static void beforeAll () throws IOException {
+		Files.createDirectories(Paths.get(folder));
+		// Two days of temperature trace: each file starts at 16:00 and has one line per minute
+		LocalDateTime start = LocalDateTime.of(2023, 3, 10, 16, 0, 4);
+		for (int day = 0; day < 2; day++) {
+			LocalDateTime t = start.plusDays(day);
+			Path p = Paths.get(folder, TraceFiles.of(folder).rotate("temp_", t, 5));
+			TraceWriter.temperature().rotate();
+			for (int m = 0; m < 1440; m++) {
+				TraceWriter.temperature().append(p, t.plusMinutes(m).format(dtfmt) + " r=21 t=" + (m % 30) + "\n");
+				if ((m % 256) == 255) {
+					// Stay below the queue size, otherwise lines are dropped
+					TraceWriter.temperature().flush();
+				}
+			}
+		}
+		TraceWriter.temperature().flush();
+	}
+
+	@AfterAll
+	public static void afterAll () throws IOException {
+		for (Path p : Files.list(Paths.get(folder)).toArray(Path[]::new)) {
+			Files.deleteIfExists(p);
+		}
+		Files.deleteIfExists(Paths.get(folder));
+	}
+
+	@Test
+	public void testIndex() throws IOException {
+		Path p = Paths.get(folder, "temp_20230310");
+		assertEquals(1440 * 12, Files.size(TraceIndex.sidecar(p)), "One index record per minute");
+		long offset = TraceIndex.find(p, LocalDateTime.of(2023, 3, 10, 17, 0));
+		String content = Files.readString(p).substring((int) offset);
+		assertTrue(content.startsWith("2023-03-10 17:00:04"), "Offset of 17:00");
+		assertEquals(-1L, TraceIndex.find(p, LocalDateTime.of(2023, 3, 12, 0, 0)), "Window after the file");
+	}
+
+	@Test
+	public void testRangeInOneFile() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		TraceReader.copyRange(folder, "temp_", TraceReader.parseTime("2023-03-10T20:00"), TraceReader.parseTime("2023-03-10T20:59:59"), sb);
+		String[] lines = sb.toString().split("\n");
+		assertEquals(60, lines.length, "Nr of lines in one hour");
+		assertTrue(lines[0].startsWith("2023-03-10 20:00:04"));
+		assertTrue(lines[59].startsWith("2023-03-10 20:59:04"));
+	}
+
+	@Test
+	public void testRangeOverTwoFiles() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		TraceReader.copyRange(folder, "temp_", TraceReader.parseTime("2023-03-11 15:30"), TraceReader.parseTime("2023-03-11 16:29:59"), sb);
+		String[] lines = sb.toString().split("\n");
+		assertEquals(60, lines.length, "Nr of lines in one hour");
+		assertTrue(lines[0].startsWith("2023-03-11 15:30:04"));
+		assertTrue(lines[30].startsWith("2023-03-11 16:00:04"));
+		assertTrue(lines[59].startsWith("2023-03-11 16:29:04"));
+	}
+}
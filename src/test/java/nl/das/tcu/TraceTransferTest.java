@@ -0,0 +1,156 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import nl.das.tcu.trace.TraceCompactor;
+import nl.das.tcu.trace.TraceTransfer;
+
+/**
+ *
+ */
+public class TraceTransferTest {
+
+	private static String folder = "src/test/resources/tracetransfer";
+	private static byte[] content;
+
+	@BeforeAll
+	public static void beforeAll () throws IOException {
+		Files.createDirectories(Paths.get(folder));
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 3000; i++) {
+			sb.append(String.format("2023-03-10 %02d:%02d:%02d r=21 t=26\n", (i / 3600) % 24, (i / 60) % 60, i % 60));
+		}
+		content = sb.toString().getBytes(StandardCharsets.UTF_8);
+		Files.write(Paths.get(folder, "temp_20230310"), content);
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(TraceCompactor.compressed(Paths.get(folder, "temp_20230309"))))) {
+			out.write(content);
+		}
+	}
+
+	@AfterAll
+	public static void afterAll () throws IOException {
+		for (Path p : Files.list(Paths.get(folder)).toArray(Path[]::new)) {
+			Files.delete(p);
+		}
+		Files.delete(Paths.get(folder));
+	}
+
+	@Test
+	public void testTransfer() throws Exception {
+		for (String fname : new String[] {"temp_20230310", "temp_20230309"}) {
+			JsonObject info = TraceTransfer.open(folder, fname);
+			assertEquals(content.length, info.getJsonNumber("size").longValue());
+			CRC32 crc = new CRC32();
+			crc.update(content);
+			assertEquals(crc.getValue(), info.getJsonNumber("crc").longValue());
+
+			// Read half of the file, "reconnect" and read the rest with compression
+			ByteArrayOutputStream received = new ByteArrayOutputStream();
+			long offset = 0;
+			boolean deflate = false;
+			while (true) {
+				JsonObject chunk = TraceTransfer.readChunk(folder, fname, offset, 100000, -1L, deflate);
+				byte[] data = Base64.getDecoder().decode(chunk.getString("data"));
+				if (chunk.getBoolean("deflated")) {
+					data = inflate(data, chunk.getInt("length"));
+				}
+				assertEquals(chunk.getInt("length"), data.length);
+				assertTrue(data.length <= TraceTransfer.maxChunkSize);
+				CRC32 c = new CRC32();
+				c.update(data);
+				assertEquals(chunk.getJsonNumber("crc").longValue(), c.getValue());
+				received.write(data);
+				offset += data.length;
+				deflate = offset > (content.length / 2);
+				if (chunk.getBoolean("eof")) {
+					break;
+				}
+			}
+			assertArrayEquals(content, received.toByteArray());
+		}
+		JsonObject chunk = TraceTransfer.readChunk(folder, "temp_20230310", content.length, 100, -1L, false);
+		assertEquals(0, chunk.getInt("length"));
+		assertTrue(chunk.getBoolean("eof"));
+		assertFalse(chunk.getBoolean("deflated"));
+		assertThrows(NoSuchFileException.class, () -> TraceTransfer.open(folder, "temp_20230311"));
+		assertThrows(NoSuchFileException.class, () -> TraceTransfer.open(folder, "../settings.json"));
+	}
+
+	@Test
+	public void testSize() throws Exception {
+		Path tracefile = Paths.get(folder, "temp_20230311");
+		Files.write(tracefile, content);
+		try {
+			long size = TraceTransfer.open(folder, "temp_20230311").getJsonNumber("size").longValue();
+			// The file grows during the transfer
+			Files.write(tracefile, "2023-03-11 23:59:59 r=21 t=26\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+			JsonObject chunk = TraceTransfer.readChunk(folder, "temp_20230311", size - 10, 100, size, false);
+			assertEquals(10, chunk.getInt("length"));
+			assertTrue(chunk.getBoolean("eof"));
+			chunk = TraceTransfer.readChunk(folder, "temp_20230311", size - 10, 100, -1L, false);
+			assertEquals(40, chunk.getInt("length"));
+		} finally {
+			Files.delete(tracefile);
+		}
+	}
+
+	@Test
+	public void testCompressedOffsets() throws Exception {
+		// Forward, skipping a part, then back to an earlier offset
+		long[] offsets = { 0, 1000, 5000, 2000, 5000 };
+		for (long offset : offsets) {
+			JsonObject chunk = TraceTransfer.readChunk(folder, "temp_20230309", offset, 1000, content.length, false);
+			byte[] data = Base64.getDecoder().decode(chunk.getString("data"));
+			assertArrayEquals(Arrays.copyOfRange(content, (int) offset, (int) offset + 1000), data);
+			assertFalse(chunk.getBoolean("eof"));
+		}
+		JsonObject chunk = TraceTransfer.readChunk(folder, "temp_20230309", content.length - 500, 1000, content.length, false);
+		assertEquals(500, chunk.getInt("length"));
+		assertTrue(chunk.getBoolean("eof"));
+	}
+
+	private static byte[] inflate(byte[] data, int length) throws DataFormatException {
+		Inflater inf = new Inflater();
+		inf.setInput(data);
+		byte[] out = new byte[length];
+		int n = inf.inflate(out);
+		inf.end();
+		assertEquals(length, n);
+		return out;
+	}
+}
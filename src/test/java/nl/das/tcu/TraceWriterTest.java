@@ -0,0 +1,87 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.tcu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import nl.das.tcu.trace.TraceWriter;
+
+/**
+ *
+ */
+public class TraceWriterTest {
+
+	private static Path folder = Paths.get("src/test/resources/tracewriter");
+
+	@BeforeAll
+	public static void beforeAll () throws IOException {
+		Files.createDirectories(folder);
+	}
+
+	@AfterAll
+	public static void afterAll () throws IOException {
+		for (Path p : Files.list(folder).toArray(Path[]::new)) {
+			Files.deleteIfExists(p);
+		}
+		Files.deleteIfExists(folder);
+	}
+
+	@Test
+	public void testLinesAreWrittenInOrder() throws IOException {
+		Path p1 = folder.resolve("state_1");
+		Path p2 = folder.resolve("state_2");
+		Files.deleteIfExists(p1);
+		Files.deleteIfExists(p2);
+		Files.createFile(p1);
+		Files.createFile(p2);
+		TraceWriter tw = TraceWriter.state();
+		tw.flush();
+		long written = tw.getWritten();
+		for (int i = 0; i < 200; i++) {
+			assertTrue(tw.append(p1, "line " + i + "\n"));
+		}
+		// Switching to another file closes the first one
+		tw.append(p2, "other\n");
+		tw.flush();
+		String[] lines = Files.readString(p1).split("\n");
+		assertEquals(200, lines.length, "Nr of lines");
+		assertEquals("line 0", lines[0]);
+		assertEquals("line 199", lines[199]);
+		assertEquals("other\n", Files.readString(p2));
+		assertEquals(written + 201, tw.getWritten(), "Nr of lines written");
+	}
+
+	@Test
+	public void testRotateReopensFile() throws IOException {
+		Path p = folder.resolve("temp_1");
+		Files.deleteIfExists(p);
+		Files.createFile(p);
+		TraceWriter tw = TraceWriter.temperature();
+		tw.append(p, "before\n");
+		tw.flush();
+		// Recreate the file like a trace rollover on the same day does
+		Files.delete(p);
+		Files.createFile(p);
+		tw.rotate();
+		tw.append(p, "after\n");
+		tw.flush();
+		assertEquals("after\n", Files.readString(p));
+	}
+}
@@ -29,6 +29,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import nl.das.tcu.objects.Terrarium;
+import nl.das.tcu.trace.TraceFiles;
+import nl.das.tcu.trace.TraceWriter;
 
 /**
  *
@@ -55,10 +57,12 @@ public class TracefileRollOverTest {
 			List<String> files = Util.listTraceFiles(Terrarium.traceFolder, "state_");
 			for (String file : files) {
 				Files.deleteIfExists(Paths.get(Terrarium.traceFolder + "/" + file));
+				Files.deleteIfExists(Paths.get(Terrarium.traceFolder + "/" + file + ".gz"));
 			}
 			files = Util.listTraceFiles(Terrarium.traceFolder, "temp_");
 			for (String file : files) {
 				Files.deleteIfExists(Paths.get(Terrarium.traceFolder + "/" + file));
+				Files.deleteIfExists(Paths.get(Terrarium.traceFolder + "/" + file + ".gz"));
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -139,6 +143,7 @@ public class TracefileRollOverTest {
 			assertEquals("Unexpected filename", "state_20210807", files.get(4));
 
 			// Check the content of the first state-file
+			TraceWriter.flushAll();
 			String[] lines = getContent(files.get(0)).split("\n");
 			// It should contain the state of all devices and start with a start-line and end with a stop line
 			assertEquals("Unexpected # of lines", Terrarium.cfg.getDeviceList().length + 2, lines.length);
@@ -155,7 +160,7 @@ public class TracefileRollOverTest {
 	private String getContent(String file) {
 		String content = "<no content>";
 		try {
-			content = Files.readString(Paths.get(Terrarium.traceFolder + "/" + file));
+			content = TraceFiles.readString(Paths.get(Terrarium.traceFolder + "/" + file));
 		} catch (IOException e) {
 			e.printStackTrace();
 		}